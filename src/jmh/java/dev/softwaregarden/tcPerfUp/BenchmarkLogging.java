@@ -0,0 +1,35 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The helpers log every migration and reset, which would drown the output of the benchmarks.
+ */
+final class BenchmarkLogging {
+
+    private static final Logger helpers = Logger.getLogger("dev.softwaregarden.tcPerfUp");
+
+    private BenchmarkLogging() {
+    }
+
+    static void quiet() {
+        helpers.setLevel(Level.WARNING);
+    }
+}
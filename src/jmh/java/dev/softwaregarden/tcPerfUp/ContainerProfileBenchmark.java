@@ -0,0 +1,87 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.ContainerProfile;
+import dev.softwaregarden.tcPerfUp.misc.DbContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.DbResetMode;
+import dev.softwaregarden.tcPerfUp.misc.ElasticsearchContainerHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cold start followed by what each test needs first (Liquibase for MySQL, loading the data for Elasticsearch)
+ * with the containers of each {@link ContainerProfile}. Run with {@code -DtcPerfUp.es.security=false} to see what TLS costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class ContainerProfileBenchmark {
+
+    @Param({"FAST_EPHEMERAL", "PROD_LIKE"})
+    public ContainerProfile profile;
+
+    private GenericContainer<?> started;
+
+    @Setup(Level.Trial)
+    public void quiet() {
+        BenchmarkLogging.quiet();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopContainer() {
+        if (started != null) {
+            started.stop();
+            started = null;
+        }
+    }
+
+    @Benchmark
+    public GenericContainer<?> mySQLStartAndMigrate() {
+        MySQLContainer<?> mySQL = BaseIntegrationTest.newMySQL(profile);
+        started = mySQL;
+        mySQL.start();
+        DbContainerHelper.prepareDatabase(mySQL, "config/liquibase/db.changelog-root.xml", DbResetMode.MIGRATE);
+        return mySQL;
+    }
+
+    @Benchmark
+    public GenericContainer<?> elasticsearchStartAndLoad() {
+        ElasticsearchContainer elasticsearch = BaseIntegrationTest.newElasticsearch(profile);
+        started = elasticsearch;
+        elasticsearch.start();
+        ElasticsearchContainerHelper.prepareData(elasticsearch, "/config/elasticsearch/");
+        return elasticsearch;
+    }
+}
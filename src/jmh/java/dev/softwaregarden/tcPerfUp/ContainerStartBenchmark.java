@@ -0,0 +1,88 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.ContainerRegistry;
+import dev.softwaregarden.tcPerfUp.misc.SharedContainers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.GenericContainer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Starting a container from scratch against getting the one shared by {@link ContainerRegistry}.
+ * Each cold start is a single shot, as a container start takes seconds.
+ */
+@SharedContainers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class ContainerStartBenchmark {
+
+    @Param({"mysql", "elasticsearch"})
+    public String container;
+
+    private Supplier<GenericContainer<?>> factory;
+    private GenericContainer<?> started;
+
+    @Setup(Level.Trial)
+    public void chooseContainer() {
+        BenchmarkLogging.quiet();
+        factory = "mysql".equals(container) ? BaseIntegrationTest::newMySQL : BaseIntegrationTest::newElasticsearch;
+        ContainerRegistry.acquire(ContainerStartBenchmark.class, container, factory);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopColdStarted() {
+        if (started != null) {
+            started.stop();
+            started = null;
+        }
+    }
+
+    // only the container of this trial, the registry outlives it when the trials run in one JVM (-f 0)
+    @TearDown(Level.Trial)
+    public void stopShared() {
+        ContainerRegistry.stopShared(container);
+    }
+
+    @Benchmark
+    public GenericContainer<?> coldStart() {
+        started = factory.get();
+        started.start();
+        return started;
+    }
+
+    @Benchmark
+    public GenericContainer<?> reuse() {
+        return ContainerRegistry.acquire(ContainerStartBenchmark.class, container, factory);
+    }
+}
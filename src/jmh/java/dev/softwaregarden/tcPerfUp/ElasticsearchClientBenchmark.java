@@ -0,0 +1,110 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.esql.jdbc.ResultSetEsqlAdapter;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import dev.softwaregarden.tcPerfUp.misc.ContainerClients;
+import dev.softwaregarden.tcPerfUp.misc.ElasticsearchContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.EsHttpLoader;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ES|QL query of {@code checkJohnnyIsHere} with a client built for the call, like it used to be,
+ * against the one kept by {@link ContainerClients}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ElasticsearchClientBenchmark {
+
+    private static final String QUERY = """
+        FROM employees
+        | WHERE last_name == "Doe"
+        | KEEP first_name
+        | LIMIT 5
+        """;
+
+    private final JacksonJsonpMapper mapper = new JacksonJsonpMapper();
+    private ElasticsearchContainer elasticsearch;
+
+    @Setup(Level.Trial)
+    public void startContainer() {
+        BenchmarkLogging.quiet();
+        elasticsearch = BaseIntegrationTest.newElasticsearch();
+        elasticsearch.start();
+        ElasticsearchContainerHelper.prepareData(elasticsearch, "/config/elasticsearch/");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContainer() {
+        elasticsearch.stop();
+    }
+
+    @Benchmark
+    public String newClientPerCall() throws Exception {
+        final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(EsHttpLoader.USERNAME, EsHttpLoader.PASSWORD));
+        final boolean secured = ElasticsearchContainerHelper.isSecured(elasticsearch);
+        final RestClient restClient = RestClient.builder(
+                new HttpHost(elasticsearch.getHost(), elasticsearch.getMappedPort(9200), ElasticsearchContainerHelper.scheme(elasticsearch)))
+            .setHttpClientConfigCallback(httpClientBuilder -> secured
+                ? httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
+                    .setSSLContext(elasticsearch.createSslContextFromCa())
+                : httpClientBuilder
+            )
+            .build();
+        try (RestClientTransport transport = new RestClientTransport(restClient, mapper)) {
+            return firstName(new ElasticsearchClient(transport));
+        }
+    }
+
+    @Benchmark
+    public String cachedClient() throws Exception {
+        return firstName(ContainerClients.elasticsearch(elasticsearch, mapper));
+    }
+
+    private static String firstName(ElasticsearchClient client) throws Exception {
+        try (ResultSet resultSet = client.esql().query(ResultSetEsqlAdapter.INSTANCE, QUERY)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.ElasticsearchContainerHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the Elasticsearch fixtures with each loader, against resetting the index from its template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class ElasticsearchDataBenchmark {
+
+    private static final String DIR = "/config/elasticsearch/";
+
+    @Param({"http", "exec"})
+    public String loader;
+
+    private ElasticsearchContainer elasticsearch;
+
+    @Setup(Level.Trial)
+    public void startContainer() {
+        BenchmarkLogging.quiet();
+        elasticsearch = BaseIntegrationTest.newElasticsearch();
+        elasticsearch.start();
+        ElasticsearchContainerHelper.resetFromTemplate(elasticsearch, DIR, ElasticsearchContainerHelper.INDEX);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContainer() {
+        elasticsearch.stop();
+    }
+
+    @Benchmark
+    public void replayAllCalls() {
+        ElasticsearchContainerHelper.replay(elasticsearch, DIR, "replayed-" + ElasticsearchContainerHelper.INDEX, loader);
+    }
+
+    @Benchmark
+    public void resetFromTemplate() {
+        ElasticsearchContainerHelper.resetFromTemplate(elasticsearch, DIR, ElasticsearchContainerHelper.INDEX);
+    }
+}
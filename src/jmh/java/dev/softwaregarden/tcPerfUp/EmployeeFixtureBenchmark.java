@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.DbContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.DbResetMode;
+import dev.softwaregarden.tcPerfUp.misc.ElasticsearchContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeBulkLoader;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of loading a million generated employees into each store, on top of the two fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EmployeeFixtureBenchmark.ROWS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class EmployeeFixtureBenchmark {
+
+    static final int ROWS = 1_000_000;
+
+    private static final String CHANGELOG = "config/liquibase/db.changelog-root.xml";
+    private static final String DIR = "/config/elasticsearch/";
+    private static final int FIRST_ID = 3;
+
+    private final EmployeeGenerator generator = new EmployeeGenerator();
+
+    private MySQLContainer<?> mySQL;
+    private ElasticsearchContainer elasticsearch;
+
+    @Setup(Level.Trial)
+    public void startContainers() {
+        BenchmarkLogging.quiet();
+        mySQL = BaseIntegrationTest.newMySQL();
+        elasticsearch = BaseIntegrationTest.newElasticsearch();
+        mySQL.start();
+        elasticsearch.start();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetData() {
+        DbContainerHelper.prepareDatabase(mySQL, CHANGELOG, DbResetMode.TRUNCATE);
+        ElasticsearchContainerHelper.resetFromTemplate(elasticsearch, DIR, ElasticsearchContainerHelper.INDEX);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContainers() {
+        elasticsearch.stop();
+        mySQL.stop();
+    }
+
+    @Benchmark
+    public EmployeeBulkLoader.Report mySQL() {
+        return EmployeeBulkLoader.intoMySQL(mySQL, mySQL.getDatabaseName(), generator.employees(FIRST_ID, ROWS));
+    }
+
+    @Benchmark
+    public EmployeeBulkLoader.Report elasticsearch() {
+        return EmployeeBulkLoader.intoElasticsearch(elasticsearch, ElasticsearchContainerHelper.INDEX, generator.employees(FIRST_ID, ROWS));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.esql.jdbc.ResultSetEsqlAdapter;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatch;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatches;
+import dev.softwaregarden.tcPerfUp.esql.ColumnVector;
+import dev.softwaregarden.tcPerfUp.esql.ColumnarEsqlAdapter;
+import dev.softwaregarden.tcPerfUp.misc.CannedEsql;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of reading a generated ES|QL response of employees through each adapter, without an Elasticsearch,
+ * so only the parsing and the access to the values are measured. Run with {@code -prof gc} to see the allocations per row.
+ * The response is all in memory to begin with, like the {@code RestClient} has it (it buffers bodies of up to 100 MB),
+ * so the allocations don't include the response itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EsqlAdapterBenchmark.ROWS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class EsqlAdapterBenchmark {
+
+    static final int ROWS = 100_000;
+
+    private static final String QUERY = "FROM employees | KEEP id, first_name, middle_name, last_name";
+
+    private ElasticsearchClient client;
+
+    @Setup
+    public void generateResponse() {
+        client = CannedEsql.client(CannedEsql.employees(new EmployeeGenerator(), 3, ROWS));
+    }
+
+    @Benchmark
+    public long resultSet() throws Exception {
+        long checksum = 0;
+        try (ResultSet rows = client.esql().query(ResultSetEsqlAdapter.INSTANCE, QUERY)) {
+            while (rows.next()) {
+                checksum += rows.getLong(1) + rows.getString(2).length() + rows.getString(4).length();
+                String middleName = rows.getString(3);
+                checksum += middleName == null ? 0 : middleName.length();
+            }
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long columnar() throws Exception {
+        long checksum = 0;
+        try (ColumnBatches batches = client.esql().query(ColumnarEsqlAdapter.INSTANCE, QUERY)) {
+            while (batches.hasNext()) {
+                ColumnBatch batch = batches.next();
+                ColumnVector.Longs ids = batch.longs("id");
+                ColumnVector.Strings firstNames = batch.strings("first_name");
+                ColumnVector.Strings middleNames = batch.strings("middle_name");
+                ColumnVector.Strings lastNames = batch.strings("last_name");
+                for (int row = 0; row < batch.size(); row++) {
+                    checksum += ids.get(row) + firstNames.get(row).length() + lastNames.get(row).length();
+                    checksum += middleNames.isNull(row) ? 0 : middleNames.get(row).length();
+                }
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.DbContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.DbResetMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.MySQLContainer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Liquibase on an already migrated database, i.e. what every test used to pay, against resetting from the snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MigrationBenchmark {
+
+    private static final String CHANGELOG = "config/liquibase/db.changelog-root.xml";
+
+    @Param({"TRUNCATE", "CLONE"})
+    public DbResetMode resetMode;
+
+    private MySQLContainer<?> mySQL;
+
+    @Setup(Level.Trial)
+    public void startContainer() {
+        BenchmarkLogging.quiet();
+        mySQL = BaseIntegrationTest.newMySQL();
+        mySQL.start();
+        DbContainerHelper.prepareDatabase(mySQL, CHANGELOG, resetMode);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContainer() {
+        mySQL.stop();
+    }
+
+    @Benchmark
+    public void liquibaseOnMigratedDatabase() {
+        DbContainerHelper.runLiquibaseMigrations(mySQL, CHANGELOG);
+    }
+
+    @Benchmark
+    public void resetFromSnapshot() {
+        DbContainerHelper.prepareDatabase(mySQL, CHANGELOG, resetMode);
+    }
+}
@@ -16,9 +16,95 @@
  */
 package dev.softwaregarden.tcPerfUp;
 
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.TransportUtils;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import dev.softwaregarden.tcPerfUp.sync.EmployeeSync;
+import dev.softwaregarden.tcPerfUp.sync.IncrementalEmployeeSync;
+import dev.softwaregarden.tcPerfUp.sync.SyncMetrics;
+import dev.softwaregarden.tcPerfUp.sync.SyncSettings;
+import dev.softwaregarden.tcPerfUp.sync.WatermarkStore;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+/**
+ * Syncs the {@code employees} table into the {@code employees} index once, all of it (see {@link EmployeeSync}),
+ * or with {@code -DtcPerfUp.sync.mode=incremental} only what changed since the previous sync (see {@link IncrementalEmployeeSync}).
+ * Where to connect to and how to sync is set with system properties, see the README.
+ */
 public class Main {
 
     public static void main(String[] args) {
-        System.out.println("Hello World!");
+        String jdbcUrl = System.getProperty("tcPerfUp.sync.jdbc.url", "jdbc:mysql://localhost:3306/test");
+        String user = System.getProperty("tcPerfUp.sync.jdbc.user", "test");
+        String password = System.getenv().getOrDefault("MYSQL_PASSWORD", "test");
+        boolean incremental = "incremental".equalsIgnoreCase(System.getProperty("tcPerfUp.sync.mode", "full"));
+        String elasticsearchUrl = System.getProperty("tcPerfUp.sync.es.url", "http://localhost:9200");
+
+        BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(
+            System.getProperty("tcPerfUp.sync.es.user", "elastic"), System.getenv().getOrDefault("ESPSWD", "changeme")));
+        SSLContext sslContext = sslContext(System.getProperty("tcPerfUp.sync.es.ca"), System.getProperty("tcPerfUp.sync.es.fingerprint"));
+        RestClient restClient = RestClient.builder(HttpHost.create(elasticsearchUrl))
+            .setHttpClientConfigCallback(builder -> {
+                builder.setDefaultCredentialsProvider(credentialsProvider);
+                return sslContext == null ? builder : builder.setSSLContext(sslContext);
+            })
+            .build();
+
+        SyncSettings settings = SyncSettings.fromSystemProperties();
+        SyncMetrics metrics;
+        try (RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper())) {
+            ElasticsearchClient client = new ElasticsearchClient(transport);
+            if (incremental) {
+                metrics = new IncrementalEmployeeSync(settings, WatermarkStore.fromSystemProperty())
+                    .run(() -> DriverManager.getConnection(withCursorFetch(jdbcUrl), user, password), client);
+            } else {
+                try (Connection connection = DriverManager.getConnection(withCursorFetch(jdbcUrl), user, password)) {
+                    metrics = new EmployeeSync(settings).run(connection, client);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        System.out.println(metrics);
+        if (metrics.failed() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Trusts the CA whose PEM certificate is in the file, or whose SHA-256 fingerprint is given, e.g. the ones Elasticsearch
+     * generates on its first start, or {@code null} for the default trust store if neither is set.
+     */
+    static SSLContext sslContext(String caCertificate, String caFingerprint) {
+        if (caCertificate != null) {
+            try {
+                return TransportUtils.sslContextFromHttpCaCrt(new File(caCertificate));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return caFingerprint == null ? null : TransportUtils.sslContextFromCaFingerprint(caFingerprint);
+    }
+
+    /**
+     * The URL with {@code useCursorFetch=true}, so the rows are streamed from a server-side cursor.
+     */
+    public static String withCursorFetch(String jdbcUrl) {
+        if (jdbcUrl.contains("useCursorFetch=")) {
+            return jdbcUrl;
+        }
+        return jdbcUrl + (jdbcUrl.indexOf('?') < 0 ? '?' : '&') + "useCursorFetch=true";
     }
 }
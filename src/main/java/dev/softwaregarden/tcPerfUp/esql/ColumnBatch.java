@@ -0,0 +1,115 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.esql;
+
+import co.elastic.clients.elasticsearch._helpers.esql.EsqlMetadata;
+import co.elastic.clients.json.JsonpMappingException;
+import jakarta.json.stream.JsonParser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Up to {@link #capacity()} rows of an ES|QL result, held column by column.
+ */
+public final class ColumnBatch {
+
+    private final ColumnVector[] columns;
+    private final Map<String, ColumnVector> byName = new HashMap<>();
+    private final int capacity;
+    private int size;
+
+    ColumnBatch(List<EsqlMetadata.EsqlColumn> columns, int capacity) {
+        this.columns = new ColumnVector[columns.size()];
+        this.capacity = capacity;
+        for (int i = 0; i < this.columns.length; i++) {
+            EsqlMetadata.EsqlColumn column = columns.get(i);
+            this.columns[i] = ColumnVector.of(column.name(), column.type(), capacity);
+            byName.put(column.name(), this.columns[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    public ColumnVector column(int index) {
+        return columns[index];
+    }
+
+    public ColumnVector column(String name) {
+        ColumnVector column = byName.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No column " + name + " in " + byName.keySet());
+        }
+        return column;
+    }
+
+    public ColumnVector.Longs longs(String name) {
+        return column(name, ColumnVector.Longs.class);
+    }
+
+    public ColumnVector.Doubles doubles(String name) {
+        return column(name, ColumnVector.Doubles.class);
+    }
+
+    public ColumnVector.Booleans booleans(String name) {
+        return column(name, ColumnVector.Booleans.class);
+    }
+
+    public ColumnVector.Strings strings(String name) {
+        return column(name, ColumnVector.Strings.class);
+    }
+
+    private <V extends ColumnVector> V column(String name, Class<V> kind) {
+        ColumnVector column = column(name);
+        if (!kind.isInstance(column)) {
+            throw new IllegalArgumentException("Column " + name + " of type " + column.type() + " isn't held as " + kind.getSimpleName());
+        }
+        return kind.cast(column);
+    }
+
+    void clear() {
+        size = 0;
+        for (ColumnVector column : columns) {
+            column.clear();
+        }
+    }
+
+    /**
+     * Reads the values of the row whose opening bracket the parser just went past, up to its closing one.
+     */
+    void readRow(JsonParser parser) {
+        for (ColumnVector column : columns) {
+            column.read(parser, parser.next(), size);
+        }
+        JsonParser.Event end = parser.next();
+        if (end != JsonParser.Event.END_ARRAY) {
+            throw new JsonpMappingException("Expecting the end of a row of " + columns.length + " values, but found " + end, parser.getLocation());
+        }
+        size++;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.esql;
+
+import co.elastic.clients.elasticsearch._helpers.esql.EsqlAdapterBase;
+import co.elastic.clients.json.JsonpMappingException;
+import co.elastic.clients.transport.endpoints.BinaryResponse;
+import jakarta.json.stream.JsonParser;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The rows of an ES|QL response, a batch at a time. There's only one {@link ColumnBatch}, refilled by every
+ * {@link #next()}, so whatever is needed from a batch has to be taken before asking for the next one.
+ * Closes the response once the last row is read, {@link #close()} is for leaving early.
+ */
+public final class ColumnBatches implements Iterator<ColumnBatch>, AutoCloseable {
+
+    private final ColumnBatch batch;
+    private final JsonParser parser;
+    private final BinaryResponse response;
+    private boolean filled;
+    private boolean exhausted;
+
+    ColumnBatches(ColumnBatch batch, JsonParser parser, BinaryResponse response) {
+        this.batch = batch;
+        this.parser = parser;
+        this.response = response;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!filled && !exhausted) {
+            fill();
+        }
+        return filled;
+    }
+
+    @Override
+    public ColumnBatch next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        filled = false;
+        return batch;
+    }
+
+    /**
+     * The batch the rows are read into, handy for the column names and types before reading any rows.
+     */
+    public ColumnBatch batch() {
+        return batch;
+    }
+
+    private void fill() {
+        batch.clear();
+        while (batch.size() < batch.capacity()) {
+            JsonParser.Event event = parser.next();
+            if (event == JsonParser.Event.END_ARRAY) {
+                EsqlAdapterBase.readFooter(parser);
+                close();
+                break;
+            }
+            if (event != JsonParser.Event.START_ARRAY) {
+                throw new JsonpMappingException("Expecting a row, but found " + event, parser.getLocation());
+            }
+            batch.readRow(parser);
+        }
+        filled = batch.size() > 0;
+    }
+
+    @Override
+    public void close() {
+        if (exhausted) {
+            return;
+        }
+        exhausted = true;
+        try (response) {
+            parser.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.esql;
+
+import jakarta.json.stream.JsonParser;
+
+import java.util.BitSet;
+
+/**
+ * The values of one column of a {@link ColumnBatch}, row {@code 0} to {@code size() - 1} of the batch.
+ * A multi-valued field keeps its first value, use an {@code MV_} function in the query to pick another one.
+ */
+public abstract sealed class ColumnVector permits ColumnVector.Longs, ColumnVector.Doubles, ColumnVector.Booleans, ColumnVector.Strings {
+
+    private final String name;
+    private final String type;
+    private final BitSet nulls;
+
+    private ColumnVector(String name, String type, int capacity) {
+        this.name = name;
+        this.type = type;
+        this.nulls = new BitSet(capacity);
+    }
+
+    static ColumnVector of(String name, String type, int capacity) {
+        return switch (type) {
+            case "long", "integer" -> new Longs(name, type, capacity);
+            case "double" -> new Doubles(name, type, capacity);
+            case "boolean" -> new Booleans(name, type, capacity);
+            default -> new Strings(name, type, capacity);
+        };
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The ES|QL type of the column.
+     */
+    public String type() {
+        return type;
+    }
+
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    void clear() {
+        nulls.clear();
+    }
+
+    final void read(JsonParser parser, JsonParser.Event event, int row) {
+        switch (event) {
+            case VALUE_NULL -> setNull(row);
+            case START_ARRAY -> {
+                JsonParser.Event first = parser.next();
+                if (first == JsonParser.Event.END_ARRAY) {
+                    setNull(row);
+                } else {
+                    read(parser, first, row);
+                    while (parser.next() != JsonParser.Event.END_ARRAY) {
+                        // the other values of a multi-valued field
+                    }
+                }
+            }
+            default -> set(parser, event, row);
+        }
+    }
+
+    void setNull(int row) {
+        nulls.set(row);
+    }
+
+    abstract void set(JsonParser parser, JsonParser.Event event, int row);
+
+    public static final class Longs extends ColumnVector {
+
+        private final long[] values;
+
+        private Longs(String name, String type, int capacity) {
+            super(name, type, capacity);
+            values = new long[capacity];
+        }
+
+        /**
+         * The value of the row, {@code 0} if it's null.
+         */
+        public long get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            values[row] = 0;
+        }
+
+        @Override
+        void set(JsonParser parser, JsonParser.Event event, int row) {
+            values[row] = parser.getLong();
+        }
+    }
+
+    public static final class Doubles extends ColumnVector {
+
+        private final double[] values;
+
+        private Doubles(String name, String type, int capacity) {
+            super(name, type, capacity);
+            values = new double[capacity];
+        }
+
+        /**
+         * The value of the row, {@code 0} if it's null.
+         */
+        public double get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            values[row] = 0;
+        }
+
+        @Override
+        void set(JsonParser parser, JsonParser.Event event, int row) {
+            values[row] = parser.isIntegralNumber() ? parser.getLong() : parser.getBigDecimal().doubleValue();
+        }
+    }
+
+    public static final class Booleans extends ColumnVector {
+
+        private final boolean[] values;
+
+        private Booleans(String name, String type, int capacity) {
+            super(name, type, capacity);
+            values = new boolean[capacity];
+        }
+
+        /**
+         * The value of the row, {@code false} if it's null.
+         */
+        public boolean get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            values[row] = false;
+        }
+
+        @Override
+        void set(JsonParser parser, JsonParser.Event event, int row) {
+            values[row] = event == JsonParser.Event.VALUE_TRUE;
+        }
+    }
+
+    public static final class Strings extends ColumnVector {
+
+        private final String[] values;
+
+        private Strings(String name, String type, int capacity) {
+            super(name, type, capacity);
+            values = new String[capacity];
+        }
+
+        public String get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void setNull(int row) {
+            super.setNull(row);
+            values[row] = null;
+        }
+
+        @Override
+        void set(JsonParser parser, JsonParser.Event event, int row) {
+            values[row] = parser.getString();
+        }
+    }
+}
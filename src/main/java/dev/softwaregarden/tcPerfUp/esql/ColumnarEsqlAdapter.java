@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.esql;
+
+import co.elastic.clients.ApiClient;
+import co.elastic.clients.elasticsearch._helpers.esql.EsqlAdapterBase;
+import co.elastic.clients.elasticsearch._helpers.esql.EsqlMetadata;
+import co.elastic.clients.elasticsearch.esql.QueryRequest;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.endpoints.BinaryResponse;
+import jakarta.json.stream.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reads an ES|QL response into {@link ColumnBatch}es of at most {@code batchSize} rows, parsing the rows
+ * only as the batches are asked for, so only one batch of parsed values is in memory at a time.
+ * The raw response still is, whole: the low-level {@code RestClient} buffers the body on the heap before the client
+ * gets to it, and fails responses over 100 MB (its {@code HeapBufferedResponseConsumerFactory} limit), however they're read.
+ * Longs, integers, doubles and booleans land in primitive arrays, everything else (keywords, texts, dates, IPs...)
+ * in strings, as they were sent (which keeps unsigned longs exact).
+ * The response is asked for row by row, a columnar one would have to be read to the end before the first row is complete.
+ * The {@link ColumnBatches} returned hold the response open until they're exhausted or closed.
+ */
+public final class ColumnarEsqlAdapter extends EsqlAdapterBase<ColumnBatches> {
+
+    public static final int DEFAULT_BATCH_SIZE = 4_096;
+
+    public static final ColumnarEsqlAdapter INSTANCE = new ColumnarEsqlAdapter(DEFAULT_BATCH_SIZE);
+
+    private final int batchSize;
+
+    public ColumnarEsqlAdapter(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("A batch needs room for at least a row, not " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public String format() {
+        return "json";
+    }
+
+    @Override
+    public boolean columnar() {
+        return false;
+    }
+
+    @Override
+    public ColumnBatches deserialize(ApiClient<ElasticsearchTransport, ?> client, QueryRequest request, BinaryResponse response) throws IOException {
+        JsonpMapper mapper = client._jsonpMapper();
+        JsonParser parser = mapper.jsonProvider().createParser(response.content());
+        try {
+            EsqlMetadata metadata = readHeader(parser, mapper);
+            return new ColumnBatches(new ColumnBatch(metadata.columns, batchSize), parser, response);
+        } catch (RuntimeException e) {
+            parser.close();
+            response.close();
+            throw e;
+        }
+    }
+}
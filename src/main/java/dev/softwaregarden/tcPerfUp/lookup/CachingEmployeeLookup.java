@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+
+/**
+ * A read-through cache in front of another lookup. It keeps the results of at most {@code maxSize} last names,
+ * dropping the least recently used ones first, each for {@code ttl} after its query was sent.
+ * Concurrent lookups of a last name which isn't cached wait for the one query the first of them sends.
+ * A failed query isn't cached, the next lookup tries again.
+ * As an {@link EmployeeChangeListener} it forgets the last names it's told about, which bounds how stale
+ * the results are by how soon the writes are reported; the last names employees had before a change aren't known,
+ * so those results live until they expire.
+ */
+public final class CachingEmployeeLookup implements EmployeeLookup, EmployeeChangeListener {
+
+    private final EmployeeLookup backend;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final LookupMetrics metrics = new LookupMetrics();
+    private final Map<String, Entry> entries;
+
+    private record Entry(CompletableFuture<List<String>> firstNames, long queriedAt) {
+    }
+
+    public CachingEmployeeLookup(EmployeeLookup backend, int maxSize, Duration ttl) {
+        this(backend, maxSize, ttl, System::nanoTime);
+    }
+
+    public CachingEmployeeLookup(EmployeeLookup backend, int maxSize, Duration ttl, LongSupplier ticker) {
+        this.backend = backend;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    metrics.evicted();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public List<String> firstNames(String lastName) {
+        long start = System.nanoTime();
+        Entry entry;
+        boolean query = false;
+        synchronized (entries) {
+            entry = entries.get(lastName);
+            if (entry != null && entry.firstNames().isDone() && ticker.getAsLong() - entry.queriedAt() >= ttlNanos) {
+                entries.remove(lastName);
+                metrics.expired();
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(new CompletableFuture<>(), ticker.getAsLong());
+                entries.put(lastName, entry);
+                query = true;
+            }
+        }
+        if (query) {
+            metrics.miss();
+            query(lastName, entry);
+        } else if (entry.firstNames().isDone()) {
+            metrics.hit();
+        } else {
+            metrics.coalesce();
+        }
+        try {
+            return entry.firstNames().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            metrics.lookupTook(System.nanoTime() - start);
+        }
+    }
+
+    private void query(String lastName, Entry entry) {
+        long start = System.nanoTime();
+        try {
+            entry.firstNames().complete(backend.firstNames(lastName));
+        } catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(lastName, entry);
+            }
+            metrics.failed();
+            entry.firstNames().completeExceptionally(e);
+        } finally {
+            metrics.backendTook(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Forgets the last name, a lookup still waiting for its query gets the result, which isn't cached anymore.
+     */
+    public void invalidate(String lastName) {
+        synchronized (entries) {
+            if (entries.remove(lastName) != null) {
+                metrics.invalidated(1);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            metrics.invalidated(entries.size());
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void employeeChanged(String lastName) {
+        invalidate(lastName);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public LookupMetrics metrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+/**
+ * Told about every last name whose employees may have changed, e.g. by an
+ * {@link dev.softwaregarden.tcPerfUp.sync.IncrementalEmployeeSync} once the changed rows are searchable.
+ */
+@FunctionalInterface
+public interface EmployeeChangeListener {
+
+    void employeeChanged(String lastName);
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+import java.util.List;
+
+/**
+ * Finds the first names of the employees with a last name, e.g. John for Doe, in alphabetical order,
+ * at most {@link #LIMIT} of them.
+ */
+@FunctionalInterface
+public interface EmployeeLookup {
+
+    int LIMIT = 100;
+
+    List<String> firstNames(String lastName);
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatch;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatches;
+import dev.softwaregarden.tcPerfUp.esql.ColumnarEsqlAdapter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks the employees up in the index with ES|QL, through a client kept for all the lookups,
+ * passing the last name as a query parameter.
+ */
+public final class EsqlEmployeeLookup implements EmployeeLookup {
+
+    private final ElasticsearchClient client;
+    private final String query;
+
+    public EsqlEmployeeLookup(ElasticsearchClient client, String index) {
+        this.client = client;
+        this.query = """
+            FROM %s
+            | WHERE last_name == ?
+            | KEEP first_name
+            | SORT first_name
+            | LIMIT %d
+            """.formatted(index, LIMIT);
+    }
+
+    @Override
+    public List<String> firstNames(String lastName) {
+        try (ColumnBatches batches = client.esql().query(ColumnarEsqlAdapter.INSTANCE, query, lastName)) {
+            List<String> firstNames = new ArrayList<>();
+            while (batches.hasNext()) {
+                ColumnBatch batch = batches.next();
+                for (int row = 0; row < batch.size(); row++) {
+                    firstNames.add(batch.strings("first_name").get(row));
+                }
+            }
+            return List.copyOf(firstNames);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
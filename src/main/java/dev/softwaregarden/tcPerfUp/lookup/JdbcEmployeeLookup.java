@@ -0,0 +1,57 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+import dev.softwaregarden.tcPerfUp.sync.ConnectionFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks the employees up in the {@code employees} table, on a connection from the factory, which may well be a pool.
+ */
+public final class JdbcEmployeeLookup implements EmployeeLookup {
+
+    private static final String SELECT = "SELECT first_name FROM employees WHERE last_name = ? ORDER BY first_name LIMIT " + LIMIT;
+
+    private final ConnectionFactory connections;
+
+    public JdbcEmployeeLookup(ConnectionFactory connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public List<String> firstNames(String lastName) {
+        try (Connection connection = connections.open();
+             PreparedStatement select = connection.prepareStatement(SELECT)) {
+            select.setString(1, lastName);
+            try (ResultSet rows = select.executeQuery()) {
+                List<String> firstNames = new ArrayList<>();
+                while (rows.next()) {
+                    firstNames.add(rows.getString(1));
+                }
+                return List.copyOf(firstNames);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.lookup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a {@link CachingEmployeeLookup} did. The latencies are kept for the last {@value #SAMPLES} lookups
+ * and backend queries, which is what the percentiles are computed from.
+ */
+public final class LookupMetrics {
+
+    static final int SAMPLES = 8_192;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final Samples lookupLatencies = new Samples();
+    private final Samples backendLatencies = new Samples();
+
+    void hit() {
+        hits.increment();
+    }
+
+    void coalesce() {
+        coalesced.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    void evicted() {
+        evictions.increment();
+    }
+
+    void expired() {
+        expirations.increment();
+    }
+
+    void invalidated(int count) {
+        invalidations.add(count);
+    }
+
+    void lookupTook(long nanos) {
+        lookupLatencies.add(nanos);
+    }
+
+    void backendTook(long nanos) {
+        backendLatencies.add(nanos);
+    }
+
+    public long lookups() {
+        return hits.sum() + coalesced.sum() + misses.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Lookups which waited for the query another lookup of the same last name had already sent.
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Lookups which queried the backend.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * The share of the lookups which didn't query the backend themselves, coalesced ones included.
+     */
+    public double hitRatio() {
+        long lookups = lookups();
+        return lookups == 0 ? 0 : (double) (lookups - misses()) / lookups;
+    }
+
+    public long lookupLatencyMicros(double percentile) {
+        return lookupLatencies.percentileMicros(percentile);
+    }
+
+    public long backendLatencyMicros(double percentile) {
+        return backendLatencies.percentileMicros(percentile);
+    }
+
+    @Override
+    public String toString() {
+        return ("Employee lookups: %,d, hit ratio %.1f%% (%,d hits, %,d coalesced, %,d misses, %,d failed), %,d evicted, %,d expired, %,d invalidated; "
+            + "latency p50 %,d µs, p99 %,d µs; backend p50 %,d µs, p99 %,d µs")
+            .formatted(lookups(), hitRatio() * 100, hits(), coalesced(), misses(), failures(), evictions(), expirations(), invalidations(),
+                lookupLatencyMicros(50), lookupLatencyMicros(99), backendLatencyMicros(50), backendLatencyMicros(99));
+    }
+
+    private static final class Samples {
+
+        private final long[] nanos = new long[SAMPLES];
+        private long count;
+
+        synchronized void add(long sample) {
+            nanos[(int) (count++ % SAMPLES)] = sample;
+        }
+
+        synchronized long percentileMicros(double percentile) {
+            int size = (int) Math.min(count, SAMPLES);
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            int at = Math.max(0, Math.min(size - 1, (int) Math.ceil(percentile / 100 * size) - 1));
+            return TimeUnit.NANOSECONDS.toMicros(sorted[at]);
+        }
+    }
+}
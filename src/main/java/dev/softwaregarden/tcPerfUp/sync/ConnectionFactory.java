@@ -0,0 +1,30 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Opens a new connection to the database with the {@code employees} table, for whoever needs one of their own,
+ * e.g. each partition of an {@link IncrementalEmployeeSync}.
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+
+    Connection open() throws SQLException;
+}
@@ -0,0 +1,224 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.util.BinaryData;
+import co.elastic.clients.util.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copies the {@code employees} table into the {@code employees} index. Rows are read with a server-side cursor,
+ * so the connection should have {@code useCursorFetch=true}, otherwise Connector/J reads the whole result first.
+ * Each row is written straight into the JSON of its document, in a builder reused for all the rows, and the bytes
+ * are handed to the {@link BulkIngester} as they are, so there's no map or POJO per row for Jackson to serialize.
+ * The ingester sends {@link SyncSettings#batchSize()} documents per request, and once {@link SyncSettings#concurrency()}
+ * requests are in flight, adding the next document blocks, so the reader never gets far ahead of Elasticsearch.
+ */
+public final class EmployeeSync {
+
+    private static final Logger logger = Logger.getLogger(EmployeeSync.class.getName());
+
+    static final String SELECT = "SELECT id, first_name, middle_name, last_name FROM employees";
+
+    private static final String MAPPING = "/config/elasticsearch/mapping.json";
+
+    private final SyncSettings settings;
+
+    public EmployeeSync(SyncSettings settings) {
+        this.settings = settings;
+    }
+
+    public SyncMetrics run(Connection connection, ElasticsearchClient client) {
+        createIndexIfMissing(client, settings.index());
+        SyncMetrics metrics = new SyncMetrics();
+        MetricsListener listener = new MetricsListener(metrics);
+        BulkIngester<Void> ingester = ingester(client, settings, listener);
+        try (ingester;
+             PreparedStatement select = connection.prepareStatement(SELECT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            select.setFetchSize(settings.fetchSize());
+            try (ResultSet rows = select.executeQuery()) {
+                index(rows, ingester, settings.index(), metrics, lastName -> {});
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        listener.awaitReported();
+        metrics.finished();
+        logger.log(Level.INFO, "Synced employees into {0}: {1}", new Object[]{settings.index(), metrics});
+        return metrics;
+    }
+
+    /**
+     * Hands every row of the result to the ingester, as the whole document, which creates or replaces it,
+     * and its last name to {@code lastNames}.
+     */
+    static void index(ResultSet rows, BulkIngester<Void> ingester, String index, SyncMetrics metrics, Consumer<String> lastNames) throws SQLException {
+        DocumentWriter writer = new DocumentWriter();
+        while (rows.next()) {
+            String id = rows.getString(1);
+            BinaryData document = writer.write(rows);
+            lastNames.accept(rows.getString(4));
+            ingester.add(operation -> operation.index(action -> action.index(index).id(id).document(document)));
+            metrics.rowRead();
+        }
+    }
+
+    static BulkIngester<Void> ingester(ElasticsearchClient client, SyncSettings settings, MetricsListener listener) {
+        return BulkIngester.of(builder -> builder
+            .client(client)
+            .maxOperations(settings.batchSize())
+            .maxConcurrentRequests(settings.concurrency())
+            .flushInterval(settings.flushInterval().toMillis(), TimeUnit.MILLISECONDS)
+            .listener(listener));
+    }
+
+    static void createIndexIfMissing(ElasticsearchClient client, String index) {
+        try {
+            if (client.indices().exists(exists -> exists.index(index)).value()) {
+                return;
+            }
+            try (InputStream mapping = EmployeeSync.class.getResourceAsStream(MAPPING)) {
+                client.indices().create(create -> create.index(index).withJson(mapping));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Turns the current row into the JSON of its document.
+     */
+    static final class DocumentWriter {
+
+        private final StringBuilder json = new StringBuilder(256);
+
+        BinaryData write(ResultSet row) throws SQLException {
+            json.setLength(0);
+            json.append('{');
+            field("first_name", row.getString(2));
+            field("middle_name", row.getString(3));
+            field("last_name", row.getString(4));
+            json.setCharAt(json.length() - 1, '}');
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            return BinaryData.of(bytes, ContentType.APPLICATION_JSON);
+        }
+
+        private void field(String name, String value) {
+            if (value == null) {
+                return;
+            }
+            json.append('"').append(name).append("\":\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    default -> {
+                        if (c < 0x20) {
+                            json.append("\\u%04x".formatted((int) c));
+                        } else {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            json.append("\",");
+        }
+    }
+
+    static final class MetricsListener implements BulkListener<Void> {
+
+        private final SyncMetrics metrics;
+        private final Map<Long, Long> startedAt = new ConcurrentHashMap<>();
+
+        MetricsListener(SyncMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<Void> contexts) {
+            startedAt.put(executionId, System.nanoTime());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<Void> contexts, BulkResponse response) {
+            int failed = 0;
+            for (BulkResponseItem item : response.items()) {
+                if (item.error() != null) {
+                    if (failed++ == 0) {
+                        logger.log(Level.WARNING, "Could not index employee {0}: {1}", new Object[]{item.id(), item.error().reason()});
+                    }
+                }
+            }
+            metrics.bulkDone(elapsed(executionId), response.items().size() - failed, failed);
+            reported(executionId);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<Void> contexts, Throwable failure) {
+            logger.log(Level.WARNING, "Bulk request " + executionId + " failed", failure);
+            metrics.bulkDone(elapsed(executionId), 0, request.operations().size());
+            reported(executionId);
+        }
+
+        /**
+         * Waits until every request sent has been reported to the metrics. Closing the ingester waits for the responses
+         * only, and the listener may hear of the last one after {@code close()} has returned.
+         */
+        synchronized void awaitReported() {
+            while (!startedAt.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        private long elapsed(long executionId) {
+            Long start = startedAt.get(executionId);
+            return start == null ? 0 : System.nanoTime() - start;
+        }
+
+        private synchronized void reported(long executionId) {
+            startedAt.remove(executionId);
+            notifyAll();
+        }
+    }
+}
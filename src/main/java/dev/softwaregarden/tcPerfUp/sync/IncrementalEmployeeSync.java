@@ -0,0 +1,199 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import dev.softwaregarden.tcPerfUp.lookup.EmployeeChangeListener;
+
+import java.io.IOException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ships only the employees whose {@code updated_at} (see {@code db.changelog-1.3.xml}) moved past the watermark
+ * of the index since the previous sync, up to the database's clock minus {@link SyncSettings#settle()}.
+ * A transaction may commit after the sync read past the time it stamped its rows with, so the rows changed
+ * in the {@link SyncSettings#overlap()} before the watermark are read again; a transaction committing later than
+ * {@code settle} plus {@code overlap} after stamping its rows is missed, until they change again.
+ * The ids of the changed rows are split into {@link SyncSettings#partitions()} ranges, each read on its own
+ * virtual thread and connection, all feeding one {@link BulkIngester}. Changed rows are indexed whole,
+ * which creates the new ones and overwrites the updated ones, so shipping a row twice does no harm.
+ * The watermark is saved only once everything up to it has been indexed, so a sync which failed or was killed
+ * is simply done again.
+ * Rows deleted from the table aren't noticed, their documents stay in the index until it's rebuilt with a full {@link EmployeeSync}.
+ * Once the changed rows are searchable, the {@link EmployeeChangeListener}s are told their last names.
+ */
+public final class IncrementalEmployeeSync {
+
+    private static final Logger logger = Logger.getLogger(IncrementalEmployeeSync.class.getName());
+
+    private final SyncSettings settings;
+    private final WatermarkStore watermarks;
+    private final List<EmployeeChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public IncrementalEmployeeSync(SyncSettings settings, WatermarkStore watermarks) {
+        this.settings = settings;
+        this.watermarks = watermarks;
+    }
+
+    public IncrementalEmployeeSync addChangeListener(EmployeeChangeListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public SyncMetrics run(ConnectionFactory connections, ElasticsearchClient client) {
+        EmployeeSync.createIndexIfMissing(client, settings.index());
+        Optional<Instant> from = watermarks.load(settings.index());
+        // indexing a row again does no harm, missing one does
+        Optional<Instant> reread = from.map(watermark -> watermark.minus(settings.overlap()));
+        SyncMetrics metrics = new SyncMetrics();
+        Instant upTo;
+        long[] ids;
+        try (Connection connection = connections.open()) {
+            Instant now = databaseNow(connection);
+            from.ifPresent(watermark -> metrics.lag(Math.max(0, Duration.between(watermark, now).toMillis())));
+            upTo = now.minus(settings.settle());
+            if (from.isPresent() && !upTo.isAfter(from.get())) {
+                metrics.finished();
+                return metrics;
+            }
+            ids = changedIds(connection, reread, upTo);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        Set<String> changedLastNames = ConcurrentHashMap.newKeySet();
+        Consumer<String> lastNames = listeners.isEmpty() ? lastName -> {} : changedLastNames::add;
+        if (ids != null) {
+            EmployeeSync.MetricsListener listener = new EmployeeSync.MetricsListener(metrics);
+            BulkIngester<Void> ingester = EmployeeSync.ingester(client, settings, listener);
+            try (ingester; ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> partitions = new ArrayList<>();
+                long partitionSize = Math.ceilDiv(ids[1] - ids[0] + 1, settings.partitions());
+                for (long first = ids[0]; first <= ids[1]; first += partitionSize) {
+                    long last = Math.min(ids[1], first + partitionSize - 1);
+                    long partitionFirst = first;
+                    partitions.add(readers.submit(() -> {
+                        shipPartition(connections, ingester, partitionFirst, last, reread, upTo, metrics, lastNames);
+                        return null;
+                    }));
+                }
+                for (Future<?> partition : partitions) {
+                    partition.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            listener.awaitReported();
+        }
+        notifyChanged(client, changedLastNames);
+        metrics.finished();
+        if (metrics.failed() > 0) {
+            logger.log(Level.WARNING, "Not moving the watermark of {0}, {1} document(s) failed", new Object[]{settings.index(), metrics.failed()});
+        } else {
+            watermarks.save(settings.index(), upTo);
+        }
+        logger.log(Level.INFO, "Synced employees changed after {0} up to {1} into {2}: {3}",
+            new Object[]{from.map(Instant::toString).orElse("the beginning"), upTo, settings.index(), metrics});
+        return metrics;
+    }
+
+    private void shipPartition(ConnectionFactory connections, BulkIngester<Void> ingester, long firstId, long lastId,
+                               Optional<Instant> from, Instant upTo, SyncMetrics metrics, Consumer<String> lastNames) throws SQLException {
+        try (Connection connection = connections.open();
+             PreparedStatement select = connection.prepareStatement(EmployeeSync.SELECT + " WHERE id BETWEEN ? AND ?" + changedSince(from),
+                 ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            select.setFetchSize(settings.fetchSize());
+            select.setLong(1, firstId);
+            select.setLong(2, lastId);
+            bindChangedSince(select, 3, from, upTo);
+            try (ResultSet rows = select.executeQuery()) {
+                EmployeeSync.index(rows, ingester, settings.index(), metrics, lastNames);
+            }
+        }
+    }
+
+    private void notifyChanged(ElasticsearchClient client, Set<String> lastNames) {
+        if (lastNames.isEmpty()) {
+            return;
+        }
+        try {
+            client.indices().refresh(refresh -> refresh.index(settings.index()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (EmployeeChangeListener listener : listeners) {
+            lastNames.forEach(listener::employeeChanged);
+        }
+    }
+
+    /**
+     * The lowest and the highest id of the changed rows, or {@code null} if nothing changed.
+     */
+    private static long[] changedIds(Connection connection, Optional<Instant> from, Instant upTo) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT MIN(id), MAX(id) FROM employees WHERE 1 = 1" + changedSince(from))) {
+            bindChangedSince(select, 1, from, upTo);
+            try (ResultSet range = select.executeQuery()) {
+                range.next();
+                long first = range.getLong(1);
+                return range.wasNull() ? null : new long[]{first, range.getLong(2)};
+            }
+        }
+    }
+
+    private static String changedSince(Optional<Instant> from) {
+        return " AND updated_at <= ?" + (from.isPresent() ? " AND updated_at > ?" : "");
+    }
+
+    private static void bindChangedSince(PreparedStatement select, int firstParameter, Optional<Instant> from, Instant upTo) throws SQLException {
+        select.setTimestamp(firstParameter, Timestamp.from(upTo));
+        if (from.isPresent()) {
+            select.setTimestamp(firstParameter + 1, Timestamp.from(from.get()));
+        }
+    }
+
+    private static Instant databaseNow(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet now = statement.executeQuery("SELECT CURRENT_TIMESTAMP(6)")) {
+            now.next();
+            return now.getTimestamp(1).toInstant();
+        }
+    }
+}
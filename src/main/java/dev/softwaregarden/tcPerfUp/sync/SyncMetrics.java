@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a sync did: rows read, documents indexed or rejected, and how long the bulk requests took.
+ * Updated by the reader and the bulk listener threads at the same time.
+ */
+public final class SyncMetrics {
+
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long[] bulkLatencies = new long[64];
+    private int bulks;
+    private volatile long finishedAt;
+    private volatile long lagMillis = -1;
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    synchronized void bulkDone(long nanos, int indexedDocuments, int failedDocuments) {
+        if (bulks == bulkLatencies.length) {
+            bulkLatencies = Arrays.copyOf(bulkLatencies, bulks * 2);
+        }
+        bulkLatencies[bulks++] = nanos;
+        indexed.addAndGet(indexedDocuments);
+        failed.addAndGet(failedDocuments);
+    }
+
+    /**
+     * How far behind the index was when the sync started, i.e. the age of the changes it's the first to see.
+     */
+    void lag(long millis) {
+        lagMillis = millis;
+    }
+
+    void finished() {
+        finishedAt = System.nanoTime();
+    }
+
+    public long rowsRead() {
+        return rowsRead.get();
+    }
+
+    public long indexed() {
+        return indexed.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    /**
+     * See {@link #lag(long)}, {@code -1} if unknown, e.g. on the first sync.
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    public synchronized int bulkRequests() {
+        return bulks;
+    }
+
+    public long elapsedNanos() {
+        return (finishedAt == 0 ? System.nanoTime() : finishedAt) - startedAt;
+    }
+
+    public double rowsPerSecond() {
+        long elapsed = elapsedNanos();
+        return elapsed == 0 ? 0 : rowsRead() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * The given percentile of the bulk request latencies, in milliseconds.
+     */
+    public synchronized long bulkLatencyMillis(double percentile) {
+        if (bulks == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(bulkLatencies, bulks);
+        Arrays.sort(sorted);
+        int at = Math.min(bulks - 1, (int) Math.ceil(percentile / 100 * bulks) - 1);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, at)]);
+    }
+
+    @Override
+    public String toString() {
+        return "%,d row(s) read, %,d indexed, %,d failed in %,d ms (%,.0f rows/s); %d bulk request(s), latency p50 %d ms, p99 %d ms, max %d ms"
+            .formatted(rowsRead(), indexed(), failed(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos()), rowsPerSecond(),
+                bulkRequests(), bulkLatencyMillis(50), bulkLatencyMillis(99), bulkLatencyMillis(100))
+            + (lagMillis < 0 ? "" : "; lag %,d ms".formatted(lagMillis));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import java.time.Duration;
+
+/**
+ * How {@link EmployeeSync} reads and indexes: rows fetched from the server-side cursor at a time, documents per bulk request,
+ * bulk requests in flight before adding more blocks the reader, and the most a partial batch waits before it's sent anyway.
+ * {@link IncrementalEmployeeSync} also splits the ids of the changed rows into {@code partitions}, leaves out the rows
+ * changed in the last {@code settle}, as transactions still running then may commit rows stamped earlier, and reads again
+ * the rows changed in the {@code overlap} before the watermark, for the transactions which took longer than {@code settle}
+ * to commit. Rows of a transaction committing more than {@code settle} plus {@code overlap} after stamping them are missed.
+ */
+public record SyncSettings(String index, int fetchSize, int batchSize, int concurrency, Duration flushInterval,
+                           int partitions, Duration settle, Duration overlap) {
+
+    public static SyncSettings fromSystemProperties() {
+        int batchSize = Integer.getInteger("tcPerfUp.sync.batch", 1_000);
+        return new SyncSettings(
+            System.getProperty("tcPerfUp.sync.index", "employees"),
+            Integer.getInteger("tcPerfUp.sync.fetch", batchSize),
+            batchSize,
+            Integer.getInteger("tcPerfUp.sync.concurrency", 2),
+            Duration.ofSeconds(1),
+            Integer.getInteger("tcPerfUp.sync.partitions", 4),
+            Duration.ofMillis(Long.getLong("tcPerfUp.sync.settle", 1_000)),
+            Duration.ofMillis(Long.getLong("tcPerfUp.sync.overlap", 60_000)));
+    }
+
+    public SyncSettings withIndex(String index) {
+        return new SyncSettings(index, fetchSize, batchSize, concurrency, flushInterval, partitions, settle, overlap);
+    }
+}
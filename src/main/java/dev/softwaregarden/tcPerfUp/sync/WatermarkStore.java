@@ -0,0 +1,79 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.sync;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * The {@code updated_at} up to which each index has been synced, kept in a properties file
+ * ({@code tcPerfUp.sync.watermark.file}, {@code .sync-watermarks.properties} in the working directory by default),
+ * so that an {@link IncrementalEmployeeSync} carries on where the previous one, in whatever process, stopped.
+ */
+public final class WatermarkStore {
+
+    private final Path file;
+
+    public WatermarkStore(Path file) {
+        this.file = file;
+    }
+
+    public static WatermarkStore fromSystemProperty() {
+        return new WatermarkStore(Path.of(System.getProperty("tcPerfUp.sync.watermark.file", ".sync-watermarks.properties")));
+    }
+
+    public synchronized Optional<Instant> load(String index) {
+        return Optional.ofNullable(read().getProperty(index)).map(Instant::parse);
+    }
+
+    /**
+     * Replaces the file at once, so a crash never leaves half a watermark behind.
+     */
+    public synchronized void save(String index, Instant watermark) {
+        Properties properties = read();
+        properties.setProperty(index, watermark.toString());
+        try {
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".sync-watermarks", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, "index -> updated_at synced up to, see " + IncrementalEmployeeSync.class.getName());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Properties read() {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return properties;
+    }
+}
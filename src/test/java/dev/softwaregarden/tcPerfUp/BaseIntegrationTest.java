@@ -17,79 +17,345 @@
 package dev.softwaregarden.tcPerfUp;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._helpers.esql.jdbc.ResultSetEsqlAdapter;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
-import co.elastic.clients.transport.rest_client.RestClientTransport;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatches;
+import dev.softwaregarden.tcPerfUp.esql.ColumnarEsqlAdapter;
+import dev.softwaregarden.tcPerfUp.misc.AdaptiveMySQLContainer;
+import dev.softwaregarden.tcPerfUp.misc.AdaptiveWaitStrategy;
+import dev.softwaregarden.tcPerfUp.misc.BackendTier;
+import dev.softwaregarden.tcPerfUp.misc.ContainerClients;
+import dev.softwaregarden.tcPerfUp.misc.ContainerProfile;
+import dev.softwaregarden.tcPerfUp.misc.ContainerRegistry;
+import dev.softwaregarden.tcPerfUp.misc.ContainerRequirements;
 import dev.softwaregarden.tcPerfUp.misc.DbContainerHelper;
+import dev.softwaregarden.tcPerfUp.misc.DbResetMode;
 import dev.softwaregarden.tcPerfUp.misc.ElasticsearchContainerHelper;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.elasticsearch.client.RestClient;
+import dev.softwaregarden.tcPerfUp.misc.EmbeddedDatabase;
+import dev.softwaregarden.tcPerfUp.misc.EmbeddedElasticsearch;
+import dev.softwaregarden.tcPerfUp.misc.EsHttpLoader;
+import dev.softwaregarden.tcPerfUp.misc.PhaseEvents;
+import dev.softwaregarden.tcPerfUp.misc.PrebakedImages;
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers;
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers.Kind;
+import dev.softwaregarden.tcPerfUp.misc.StartupTimeline;
+import dev.softwaregarden.tcPerfUp.misc.TestBodyEventExtension;
+import dev.softwaregarden.tcPerfUp.misc.TestImpactExtension;
+import dev.softwaregarden.tcPerfUp.misc.TestLogBuffer;
+import dev.softwaregarden.tcPerfUp.sync.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.testcontainers.containers.JdbcDatabaseContainer;
 import org.testcontainers.containers.MySQLContainer;
 import org.testcontainers.elasticsearch.ElasticsearchContainer;
-import org.testcontainers.junit.jupiter.Container;
-import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-@Testcontainers
+/**
+ * Containers are taken from the {@link ContainerRegistry}: a fresh pair for every test by default,
+ * or the JVM-wide pair for classes annotated with {@link dev.softwaregarden.tcPerfUp.misc.SharedContainers}.
+ * The classes of a JVM run one after another; running them in parallel takes several surefire forks ({@code -DtcPerfUp.forks}),
+ * each of which starts containers of its own.
+ * Classes which passed before are skipped while nothing they depend on changes, see {@link dev.softwaregarden.tcPerfUp.misc.TestImpact}.
+ * The output of the containers goes into the {@link TestLogBuffer} of the test using them, kept only if the test fails.
+ * On the {@link BackendTier#EMBEDDED} tier (the default) there are no containers: tests get an {@link EmbeddedDatabase}
+ * and an index of the {@link EmbeddedElasticsearch} instead, through {@link #connection()}, {@link #connections()}
+ * and {@link #elasticsearchClient()}, and the tests asking for {@link #mySQL()} or {@link #elasticsearch()} are skipped.
+ * The stand-in is one for the whole JVM, so there every test gets an index prefix of its own.
+ */
+@ExtendWith({TestImpactExtension.class, TestBodyEventExtension.class})
 public abstract class BaseIntegrationTest {
 
+    private static final Logger logger = Logger.getLogger(BaseIntegrationTest.class.getName());
+
     protected static final String MYSQL_IMAGE = "mysql:8.3.0";
     protected static final String ELASTICSEARCH_IMAGE = "docker.elastic.co/elasticsearch/elasticsearch:8.13.1";
 
-    @Container
-    protected MySQLContainer<?> mySQL  = new MySQLContainer<>(MYSQL_IMAGE);
+    private static final ContainerProfile PROFILE = ContainerProfile.fromSystemProperty();
+    private static final BackendTier TIER = BackendTier.fromSystemProperty();
+
+    private static final String LIQUIBASE_DIR = "config/liquibase/";
+    private static final String ELASTICSEARCH_DIR = "/config/elasticsearch/";
+
+    private static final AtomicInteger embeddedIndices = new AtomicInteger();
+
+    static {
+        ContainerRegistry.register(Kind.MYSQL, BaseIntegrationTest::newMySQL);
+        ContainerRegistry.register(Kind.ELASTICSEARCH, BaseIntegrationTest::newElasticsearch);
+    }
+
+    private MySQLContainer<?> mySQL;
+
+    private ElasticsearchContainer elasticsearch;
 
-    @Container
-    protected ElasticsearchContainer elasticsearch = new ElasticsearchContainer(ELASTICSEARCH_IMAGE);
+    private EmbeddedDatabase embeddedDatabase;
 
     protected JacksonJsonpMapper JSONP_MAPPER = new JacksonJsonpMapper();
 
+    protected final DbResetMode dbResetMode = DbResetMode.fromSystemProperty();
+
+    /**
+     * The database of {@link #mySQL()} and the index of {@link #elasticsearch()} this test should use.
+     */
+    protected String database;
+    protected String employeesIndex;
+
+    private Connection testTransaction;
+    // connections() committed around the test's transaction, so rolling it back isn't enough
+    private boolean committedOutsideTransaction;
+
+    private StartupTimeline timeline;
+    private TestLogBuffer logs;
+    private final Map<Kind, CompletableFuture<Void>> prepared = new EnumMap<>(Kind.class);
+
+    /**
+     * The containers named by {@link RequiresContainers} start side by side, and each is prepared as soon as it's up,
+     * so e.g. Liquibase runs while Elasticsearch is still booting. The timeline of it all is logged.
+     * Other containers are left until {@link #mySQL()} or {@link #elasticsearch()} is called, if ever.
+     */
     @BeforeEach
-    void prepareContainers() throws InterruptedException {
-        DbContainerHelper.runLiquibaseMigrations(mySQL, "config/liquibase/db.changelog-root.xml");
-        ElasticsearchContainerHelper.prepareData(elasticsearch, "/config/elasticsearch/");
+    void prepareContainers(TestInfo testInfo) {
+        this.timeline = new StartupTimeline();
+        this.logs = TestLogBuffer.current();
+        employeesIndex = TIER == BackendTier.CONTAINERS
+            ? ElasticsearchContainerHelper.INDEX
+            : "e" + embeddedIndices.incrementAndGet() + "-" + ElasticsearchContainerHelper.INDEX;
+
+        Set<Kind> required = ContainerRequirements.of(getClass(), testInfo.getTestMethod());
+        if (required.isEmpty()) {
+            return;
+        }
+        required.forEach(kind -> {
+            ContainerRequirements.startedUpFront(kind);
+            prepareAsync(kind);
+        });
+        ContainerRegistry.join(CompletableFuture.allOf(prepared.values().toArray(CompletableFuture[]::new)));
+        logger.log(Level.INFO, "Containers ready for {0}: {1}", new Object[]{getClass().getSimpleName(), timeline.report()});
+    }
+
+    @AfterEach
+    void releaseContainers() {
+        for (Kind kind : Kind.values()) {
+            if (!prepared.containsKey(kind)) {
+                ContainerRequirements.skipped(kind);
+            }
+        }
+        if (testTransaction != null) {
+            DbContainerHelper.rollbackTestTransaction(testTransaction);
+            testTransaction = null;
+            if (committedOutsideTransaction) {
+                DbContainerHelper.restoreSnapshot(mySQL, database);
+                committedOutsideTransaction = false;
+            }
+        }
+        if (embeddedDatabase != null) {
+            embeddedDatabase.close();
+            embeddedDatabase = null;
+        }
+        if (TIER != BackendTier.CONTAINERS && prepared.containsKey(Kind.ELASTICSEARCH)) {
+            EmbeddedElasticsearch.instance(JSONP_MAPPER).deleteAll(employeesIndex);
+        }
+        TestLogBuffer.detach(elasticsearch, logs);
+        TestLogBuffer.detach(mySQL, logs);
+        ContainerRegistry.release(getClass(), elasticsearch);
+        ContainerRegistry.release(getClass(), mySQL);
+    }
+
+    /**
+     * MySQL, started and prepared for this test, now if it hasn't been required up front.
+     * Skips the test on the embedded tier.
+     */
+    protected MySQLContainer<?> mySQL() {
+        assumeContainers();
+        awaitPrepared(Kind.MYSQL);
+        return mySQL;
+    }
+
+    /**
+     * Elasticsearch, started and prepared for this test, now if it hasn't been required up front.
+     * Skips the test on the embedded tier.
+     */
+    protected ElasticsearchContainer elasticsearch() {
+        assumeContainers();
+        awaitPrepared(Kind.ELASTICSEARCH);
+        return elasticsearch;
+    }
+
+    private static void assumeContainers() {
+        Assumptions.assumeTrue(TIER == BackendTier.CONTAINERS,
+            "needs more of MySQL or Elasticsearch than the embedded tier has, runs with -DtcPerfUp.backend=containers");
+    }
+
+    /**
+     * A connection to this test's database, in MySQL or embedded, whichever the tier is; give it back with {@link #release}.
+     */
+    protected Connection connection() throws SQLException {
+        if (TIER == BackendTier.CONTAINERS) {
+            return connectionTo(mySQL());
+        }
+        awaitPrepared(Kind.MYSQL);
+        return embeddedDatabase.connect();
+    }
+
+    /**
+     * Opens connections of their own to this test's database, outside of the test's transaction, for code which commits
+     * and closes them itself, like a loader or a sync. Against MySQL they fetch with a cursor and rewrite batched inserts.
+     * In {@link DbResetMode#ROLLBACK} mode the database is truncated and refilled after the test then.
+     */
+    protected ConnectionFactory connections() {
+        if (TIER == BackendTier.CONTAINERS) {
+            MySQLContainer<?> mySQL = mySQL();
+            committedOutsideTransaction = testTransaction != null;
+            String url = Main.withCursorFetch(DbContainerHelper.jdbcUrl(mySQL, database)) + "&rewriteBatchedStatements=true";
+            return () -> DriverManager.getConnection(url, mySQL.getUsername(), mySQL.getPassword());
+        }
+        awaitPrepared(Kind.MYSQL);
+        return embeddedDatabase::connect;
+    }
+
+    /**
+     * A client of the Elasticsearch holding this test's {@link #employeesIndex}, the container or the stand-in.
+     */
+    protected ElasticsearchClient elasticsearchClient() {
+        if (TIER == BackendTier.CONTAINERS) {
+            return ContainerClients.elasticsearch(elasticsearch(), JSONP_MAPPER);
+        }
+        awaitPrepared(Kind.ELASTICSEARCH);
+        return EmbeddedElasticsearch.instance(JSONP_MAPPER).client();
+    }
+
+    /**
+     * An {@link EsHttpLoader} of the Elasticsearch holding this test's {@link #employeesIndex}, the container or the stand-in.
+     */
+    protected EsHttpLoader elasticsearchLoader() {
+        if (TIER == BackendTier.CONTAINERS) {
+            return EsHttpLoader.forContainer(elasticsearch());
+        }
+        awaitPrepared(Kind.ELASTICSEARCH);
+        return EsHttpLoader.forStandIn(EmbeddedElasticsearch.instance(JSONP_MAPPER));
+    }
+
+    private void awaitPrepared(Kind kind) {
+        if (!prepared.containsKey(kind)) {
+            ContainerRequirements.startedLazily(kind);
+            logger.log(Level.INFO, "{0} started on first access by {1}, @RequiresContainers would start it up front",
+                new Object[]{kind, getClass().getSimpleName()});
+            prepareAsync(kind);
+        }
+        ContainerRegistry.join(prepared.get(kind));
+    }
+
+    private CompletableFuture<Void> prepareAsync(Kind kind) {
+        boolean containers = TIER == BackendTier.CONTAINERS;
+        if (containers && ContainerRegistry.isShared(getClass())) {
+            ContainerRegistry.warmUp(kind);
+        }
+        String testClass = getClass().getName();
+        Runnable chain = switch (kind) {
+            case MYSQL -> containers ? this::prepareMySQL : this::prepareEmbeddedDatabase;
+            case ELASTICSEARCH -> containers ? this::prepareElasticsearch : this::prepareEmbeddedElasticsearch;
+        };
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> TestLogBuffer.runWith(logs, () -> PhaseEvents.runFor(testClass, chain)));
+        prepared.put(kind, future);
+        return future;
+    }
+
+    private void prepareMySQL() {
+        mySQL = timeline.time("mysql", "start",
+            () -> ContainerRegistry.acquire(getClass(), ContainerRegistry.key(Kind.MYSQL), BaseIntegrationTest::newMySQL));
+        TestLogBuffer.attach(mySQL, logs);
+        database = mySQL.getDatabaseName();
+        timeline.time("mysql", "migrate",
+            () -> DbContainerHelper.prepareDatabase(mySQL, database, LIQUIBASE_DIR + "db.changelog-root.xml", dbResetMode));
+        if (PrebakedImages.ENABLED) {
+            timeline.time("mysql", "bake", () -> PrebakedImages.bake(mySQL, PrebakedImages.imageFor(MYSQL_IMAGE, PROFILE, LIQUIBASE_DIR)));
+        }
+        if (dbResetMode == DbResetMode.ROLLBACK) {
+            testTransaction = DbContainerHelper.beginTestTransaction(mySQL, database);
+        }
+    }
+
+    private void prepareElasticsearch() {
+        elasticsearch = timeline.time("elasticsearch", "start",
+            () -> ContainerRegistry.acquire(getClass(), ContainerRegistry.key(Kind.ELASTICSEARCH), BaseIntegrationTest::newElasticsearch));
+        TestLogBuffer.attach(elasticsearch, logs);
+        timeline.time("elasticsearch", "data",
+            () -> ElasticsearchContainerHelper.prepareData(elasticsearch, ELASTICSEARCH_DIR));
+        if (PrebakedImages.ENABLED) {
+            timeline.time("elasticsearch", "bake",
+                () -> PrebakedImages.bake(elasticsearch, PrebakedImages.imageFor(ELASTICSEARCH_IMAGE, PROFILE, ELASTICSEARCH_DIR)));
+        }
+    }
+
+    private void prepareEmbeddedDatabase() {
+        // the database is named once it's there, the event only tells it's the stand-in
+        embeddedDatabase = timeline.time("h2", "migrate", () -> PhaseEvents.record(new PhaseEvents.Migration("h2", "migrate"),
+            () -> EmbeddedDatabase.migrated(LIQUIBASE_DIR + "db.changelog-root.xml")));
+        database = embeddedDatabase.name();
+    }
+
+    private void prepareEmbeddedElasticsearch() {
+        timeline.time("elasticsearch-stand-in", "data", () -> PhaseEvents.record(new PhaseEvents.DataPrep(employeesIndex, "replay stand-in"),
+            () -> EmbeddedElasticsearch.instance(JSONP_MAPPER).replay(ElasticsearchContainerHelper.steps(ELASTICSEARCH_DIR, employeesIndex))));
     }
 
     /**
      * <img src="https://media.tenor.com/qMQ0nbfy6doAAAAC/theshining-killer.gif" alt="here's Johnny!"/>
      */
+    protected void checkJohnnyIsInTheIndex() {
+        checkJohnnyIsHere(elasticsearchClient());
+    }
 
-    protected void checkJohnnyIsHere(ElasticsearchContainer esContainer) {
+    /**
+     * <img src="https://media.tenor.com/qMQ0nbfy6doAAAAC/theshining-killer.gif" alt="here's Johnny!"/>
+     */
+    protected void checkJohnnyIsInTheDatabase() {
+        Connection connection = null;
         try {
-            final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(AuthScope.ANY,
-                new UsernamePasswordCredentials("elastic", System.getenv().getOrDefault("ESPSWD", "changeme")));
-
-            final RestClient restClient = RestClient.builder(new HttpHost(esContainer.getHost(), esContainer.getMappedPort(9200), "https"))
-                .setHttpClientConfigCallback(hcb -> hcb.setDefaultCredentialsProvider(credentialsProvider))
-                .setHttpClientConfigCallback(httpClientBuilder ->
-                    httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
-                        .setSSLContext(esContainer.createSslContextFromCa())
-                )
-                .build();
-            final RestClientTransport transport = new RestClientTransport(restClient, JSONP_MAPPER);
+            connection = connection();
+            checkJohnnyIsHere(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            release(connection);
+        }
+    }
 
-            final ElasticsearchClient client = new ElasticsearchClient(transport);
+    /**
+     * <img src="https://media.tenor.com/qMQ0nbfy6doAAAAC/theshining-killer.gif" alt="here's Johnny!"/>
+     */
+    protected void checkJohnnyIsHere(ElasticsearchContainer esContainer) {
+        checkJohnnyIsHere(ContainerClients.elasticsearch(esContainer, JSONP_MAPPER));
+    }
 
+    private void checkJohnnyIsHere(ElasticsearchClient client) {
+        try {
             String query = """
-                FROM employees
+                FROM %s
                 | WHERE last_name == "Doe"
                 | KEEP first_name
                 | LIMIT 5
-                """;
+                """.formatted(employeesIndex);
 
-            ResultSet resultSet = client.esql().query(ResultSetEsqlAdapter.INSTANCE, query);
-            Assertions.assertTrue(resultSet.next());
-            Assertions.assertEquals("John", resultSet.getString(1));
+            try (ColumnBatches batches = client.esql().query(ColumnarEsqlAdapter.INSTANCE, query)) {
+                Assertions.assertTrue(batches.hasNext());
+                Assertions.assertEquals("John", batches.next().strings("first_name").get(0));
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -99,16 +365,79 @@ public abstract class BaseIntegrationTest {
      * <img src="https://media.tenor.com/qMQ0nbfy6doAAAAC/theshining-killer.gif" alt="here's Johnny!"/>
      */
     protected void checkJohnnyIsHere(JdbcDatabaseContainer<?> dbContainer) {
+        Connection connection = null;
         try {
-            Connection connection = dbContainer.createConnection("");
+            connection = connectionTo(dbContainer);
+            checkJohnnyIsHere(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            release(connection);
+        }
+    }
 
-            ResultSet resultSet = connection.createStatement()
-                .executeQuery("select first_name from employees where last_name = 'Doe'");
+    private static void checkJohnnyIsHere(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select first_name from employees where last_name = 'Doe'")) {
             Assertions.assertTrue(resultSet.next());
             Assertions.assertEquals("John", resultSet.getString(1));
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Connects to this test's {@link #database}. In {@link DbResetMode#ROLLBACK} mode the test's own transaction
+     * has to be used, otherwise nothing would be undone.
+     */
+    protected Connection connectionTo(JdbcDatabaseContainer<?> dbContainer) throws SQLException {
+        if (dbContainer != mySQL) {
+            return DbContainerHelper.connect(dbContainer, dbContainer.getDatabaseName());
+        }
+        return testTransaction != null ? testTransaction : DbContainerHelper.connect(mySQL, database);
+    }
+
+    /**
+     * Gives back a connection obtained from {@link #connectionTo}, unless it's the test's transaction,
+     * which lives until the test is over.
+     */
+    protected void release(Connection connection) {
+        if (connection != null && connection != testTransaction) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Containers set up according to the {@link ContainerProfile} selected for the run, waited for with an {@link AdaptiveWaitStrategy}
+     * unless told otherwise. With {@code -DtcPerfUp.prebaked=true}
+     * they start off the {@link PrebakedImages} once they're there, and the first containers seeded the usual way are committed as such.
+     */
+    protected static MySQLContainer<?> newMySQL() {
+        return newMySQL(PROFILE);
+    }
+
+    protected static MySQLContainer<?> newMySQL(ContainerProfile profile) {
+        DockerImageName image = PrebakedImages.ENABLED
+            ? PrebakedImages.resolve(MYSQL_IMAGE, profile, LIQUIBASE_DIR)
+            : DockerImageName.parse(MYSQL_IMAGE);
+        MySQLContainer<?> mySQL = AdaptiveWaitStrategy.ENABLED ? new AdaptiveMySQLContainer(image) : new MySQLContainer<>(image);
+        return profile.configure(mySQL, PrebakedImages.ENABLED);
+    }
+
+    protected static ElasticsearchContainer newElasticsearch() {
+        return newElasticsearch(PROFILE);
+    }
+
+    protected static ElasticsearchContainer newElasticsearch(ContainerProfile profile) {
+        DockerImageName image = PrebakedImages.ENABLED
+            ? PrebakedImages.resolve(ELASTICSEARCH_IMAGE, profile, ELASTICSEARCH_DIR)
+            : DockerImageName.parse(ELASTICSEARCH_IMAGE);
+        ElasticsearchContainer elasticsearch = new ElasticsearchContainer(image);
+        if (AdaptiveWaitStrategy.ENABLED) {
+            elasticsearch.waitingFor(AdaptiveWaitStrategy.forElasticsearch());
+        }
+        return profile.configure(elasticsearch, PrebakedImages.ENABLED);
+    }
 }
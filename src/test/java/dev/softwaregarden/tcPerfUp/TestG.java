@@ -0,0 +1,35 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator.Employee;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class TestG {
+
+    @Test
+    void sameSeedSameEmployees() {
+        List<Employee> employees = new EmployeeGenerator(7).employees(3, 1_000).toList();
+        Assertions.assertEquals(employees, new EmployeeGenerator(7).employees(3, 1_000).toList());
+        Assertions.assertNotEquals(employees, new EmployeeGenerator(8).employees(3, 1_000).toList());
+        Assertions.assertEquals(employees.get(500), new EmployeeGenerator(7).employee(503));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.lookup.CachingEmployeeLookup;
+import dev.softwaregarden.tcPerfUp.lookup.EmployeeLookup;
+import dev.softwaregarden.tcPerfUp.misc.FakeSleeper;
+import dev.softwaregarden.tcPerfUp.misc.VirtualClock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TestH {
+
+    private static final int LAST_NAMES = 50;
+
+    /**
+     * A slow backend counting the queries of every last name.
+     */
+    private static final class CountingLookup implements EmployeeLookup {
+
+        final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+
+        @Override
+        public List<String> firstNames(String lastName) {
+            queries.computeIfAbsent(lastName, name -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return List.of("First of " + lastName);
+        }
+    }
+
+    @Test
+    void concurrentLookupsQueryEachLastNameOnce() throws Exception {
+        CountingLookup backend = new CountingLookup();
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(backend, LAST_NAMES, Duration.ofMinutes(1));
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> lookups = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10_000; i++) {
+                String lastName = "Last" + (i % LAST_NAMES);
+                lookups.add(threads.submit(() -> {
+                    start.await();
+                    Assertions.assertEquals(List.of("First of " + lastName), lookup.firstNames(lastName));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : lookups) {
+                future.get();
+            }
+        }
+        Assertions.assertEquals(LAST_NAMES, backend.queries.size());
+        backend.queries.values().forEach(queries -> Assertions.assertEquals(1, queries.get()));
+        Assertions.assertEquals(10_000, lookup.metrics().lookups());
+        Assertions.assertEquals(LAST_NAMES, lookup.metrics().misses());
+        Assertions.assertEquals(0.995, lookup.metrics().hitRatio(), 0.0001);
+        Assertions.assertTrue(lookup.metrics().backendLatencyMicros(50) >= 20_000, lookup.metrics()::toString);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        CountingLookup backend = new CountingLookup();
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(backend, 2, Duration.ofMinutes(1));
+        lookup.firstNames("A");
+        lookup.firstNames("B");
+        lookup.firstNames("A");
+        lookup.firstNames("C");
+        Assertions.assertEquals(2, lookup.size());
+        Assertions.assertEquals(1, lookup.metrics().evictions());
+        lookup.firstNames("A");
+        lookup.firstNames("B");
+        Assertions.assertEquals(1, backend.queries.get("A").get());
+        Assertions.assertEquals(2, backend.queries.get("B").get());
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        Assumptions.assumeTrue(VirtualClock.VIRTUAL, "the clock is real");
+        CountingLookup backend = new CountingLookup();
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(backend, LAST_NAMES, Duration.ofMinutes(10), VirtualClock.get()::nanoTime);
+        lookup.firstNames("A");
+        VirtualClock.get().advance(Duration.ofMinutes(9));
+        lookup.firstNames("A");
+        Assertions.assertEquals(1, backend.queries.get("A").get());
+        VirtualClock.get().advance(Duration.ofMinutes(1));
+        lookup.firstNames("A");
+        Assertions.assertEquals(2, backend.queries.get("A").get());
+        Assertions.assertEquals(1, lookup.metrics().expirations());
+    }
+
+    @Test
+    void expiresWhileSleeping() {
+        CountingLookup backend = new CountingLookup();
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(backend, LAST_NAMES, Duration.ofMillis(100), VirtualClock.get()::nanoTime);
+        lookup.firstNames("A");
+        FakeSleeper.sleep(100);
+        lookup.firstNames("A");
+        Assertions.assertEquals(2, backend.queries.get("A").get());
+        Assertions.assertEquals(1, lookup.metrics().expirations());
+    }
+
+    @Test
+    void forgetsChangedAndFailedLastNames() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(lastName -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("backend down");
+            }
+            return List.of("John #" + calls.get());
+        }, LAST_NAMES, Duration.ofMinutes(1));
+        Assertions.assertThrows(IllegalStateException.class, () -> lookup.firstNames("Doe"));
+        Assertions.assertEquals(List.of("John #2"), lookup.firstNames("Doe"));
+        Assertions.assertEquals(List.of("John #2"), lookup.firstNames("Doe"));
+        lookup.employeeChanged("Doe");
+        Assertions.assertEquals(List.of("John #3"), lookup.firstNames("Doe"));
+        lookup.invalidateAll();
+        Assertions.assertEquals(0, lookup.size());
+        Assertions.assertEquals(1, lookup.metrics().failures());
+        Assertions.assertEquals(2, lookup.metrics().invalidations());
+    }
+}
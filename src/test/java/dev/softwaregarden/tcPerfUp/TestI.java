@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatch;
+import dev.softwaregarden.tcPerfUp.esql.ColumnBatches;
+import dev.softwaregarden.tcPerfUp.esql.ColumnarEsqlAdapter;
+import dev.softwaregarden.tcPerfUp.misc.CannedEsql;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator.Employee;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class TestI {
+
+    private static final String QUERY = "FROM employees | KEEP id, first_name, middle_name, last_name";
+
+    @Test
+    void readsTheRowsInBatches() throws Exception {
+        EmployeeGenerator generator = new EmployeeGenerator();
+        ElasticsearchClient client = CannedEsql.client(CannedEsql.employees(generator, 3, 10_001));
+        List<Integer> sizes = new ArrayList<>();
+        List<Employee> employees = new ArrayList<>();
+        try (ColumnBatches batches = client.esql().query(new ColumnarEsqlAdapter(1_000), QUERY)) {
+            Assertions.assertEquals("keyword", batches.batch().column(1).type());
+            while (batches.hasNext()) {
+                ColumnBatch batch = batches.next();
+                sizes.add(batch.size());
+                for (int row = 0; row < batch.size(); row++) {
+                    employees.add(new Employee((int) batch.longs("id").get(row), batch.strings("first_name").get(row),
+                        batch.strings("middle_name").get(row), batch.strings("last_name").get(row)));
+                    Assertions.assertEquals(batch.strings("middle_name").get(row) == null, batch.column("middle_name").isNull(row));
+                }
+            }
+        }
+        Assertions.assertEquals(11, sizes.size());
+        Assertions.assertEquals(1, sizes.get(10));
+        Assertions.assertEquals(generator.employees(3, 10_001).toList(), employees);
+    }
+
+    @Test
+    void readsPrimitivesNullsAndMultiValues() throws Exception {
+        String response = """
+            {"columns":[{"name":"n","type":"integer"},{"name":"d","type":"double"},{"name":"b","type":"boolean"},{"name":"s","type":"keyword"}],
+             "values":[[1,1.5,true,"a"],[null,null,null,null],[[3,4],2,false,["c","d"]],[[],0.25,[true,false],"e"]]}""";
+        ElasticsearchClient client = CannedEsql.client(response.getBytes(StandardCharsets.UTF_8));
+        try (ColumnBatches batches = client.esql().query(ColumnarEsqlAdapter.INSTANCE, "ROW ...")) {
+            ColumnBatch batch = batches.next();
+            Assertions.assertFalse(batches.hasNext());
+            Assertions.assertEquals(4, batch.size());
+            Assertions.assertEquals(1, batch.longs("n").get(0));
+            Assertions.assertEquals(1.5, batch.doubles("d").get(0));
+            Assertions.assertTrue(batch.booleans("b").get(0));
+            for (int column = 0; column < batch.columnCount(); column++) {
+                Assertions.assertFalse(batch.column(column).isNull(0));
+                Assertions.assertTrue(batch.column(column).isNull(1));
+            }
+            Assertions.assertEquals(3, batch.longs("n").get(2));
+            Assertions.assertEquals(2.0, batch.doubles("d").get(2));
+            Assertions.assertEquals("c", batch.strings("s").get(2));
+            Assertions.assertTrue(batch.column("n").isNull(3));
+            Assertions.assertTrue(batch.booleans("b").get(3));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> batch.strings("n"));
+        }
+    }
+}
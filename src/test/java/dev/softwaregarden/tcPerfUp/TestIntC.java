@@ -17,26 +17,30 @@
 
 package dev.softwaregarden.tcPerfUp;
 
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers;
+import dev.softwaregarden.tcPerfUp.misc.SharedContainers;
 import org.junit.jupiter.api.Test;
 
+@SharedContainers
+@RequiresContainers({RequiresContainers.Kind.MYSQL, RequiresContainers.Kind.ELASTICSEARCH})
 class TestIntC extends BaseIntegrationTest{
 
     @Test
     void test1() {
-        checkJohnnyIsHere(mySQL);
-        checkJohnnyIsHere(elasticsearch);
+        checkJohnnyIsInTheDatabase();
+        checkJohnnyIsInTheIndex();
         System.out.println("integration test C1");
     }
     @Test
     void test2() {
-        checkJohnnyIsHere(mySQL);
-        checkJohnnyIsHere(elasticsearch);
+        checkJohnnyIsInTheDatabase();
+        checkJohnnyIsInTheIndex();
         System.out.println("integration test C2");
     }
     @Test
     void test3() {
-        checkJohnnyIsHere(mySQL);
-        checkJohnnyIsHere(elasticsearch);
+        checkJohnnyIsInTheDatabase();
+        checkJohnnyIsInTheIndex();
         System.out.println("integration test C3");
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeBulkLoader;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers;
+import dev.softwaregarden.tcPerfUp.misc.SharedContainers;
+import dev.softwaregarden.tcPerfUp.sync.EmployeeSync;
+import dev.softwaregarden.tcPerfUp.sync.SyncMetrics;
+import dev.softwaregarden.tcPerfUp.sync.SyncSettings;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+
+@SharedContainers
+@RequiresContainers({RequiresContainers.Kind.MYSQL, RequiresContainers.Kind.ELASTICSEARCH})
+class TestIntE extends BaseIntegrationTest {
+
+    private static final int GENERATED = 10_000;
+
+    @Test
+    void syncsAllTheEmployees() throws Exception {
+        EmployeeGenerator generator = new EmployeeGenerator();
+        EmployeeBulkLoader.intoDatabase(connections(), database, generator.employees(3, GENERATED));
+        String index = employeesIndex + "-synced";
+        ElasticsearchClient client = elasticsearchClient();
+
+        SyncMetrics metrics;
+        try (Connection connection = connections().open()) {
+            metrics = new EmployeeSync(new SyncSettings(index, 500, 1_000, 2, Duration.ofSeconds(1), 4, Duration.ZERO, Duration.ZERO)).run(connection, client);
+        }
+
+        try {
+            Assertions.assertEquals(GENERATED + 2, metrics.rowsRead());
+            Assertions.assertEquals(GENERATED + 2, metrics.indexed());
+            Assertions.assertEquals(0, metrics.failed());
+            client.indices().refresh(refresh -> refresh.index(index));
+            Assertions.assertEquals(GENERATED + 2, client.count(count -> count.index(index)).count());
+
+            EmployeeGenerator.Employee expected = generator.employee(5_000);
+            GetResponse<ObjectNode> synced = client.get(get -> get.index(index).id("5000"), ObjectNode.class);
+            Assertions.assertEquals(expected.firstName(), synced.source().get("first_name").asText());
+            Assertions.assertEquals(expected.lastName(), synced.source().get("last_name").asText());
+            GetResponse<ObjectNode> john = client.get(get -> get.index(index).id("1"), ObjectNode.class);
+            Assertions.assertEquals("Edgar", john.source().get("middle_name").asText());
+        } finally {
+            client.indices().delete(delete -> delete.index(index));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.softwaregarden.tcPerfUp.lookup.CachingEmployeeLookup;
+import dev.softwaregarden.tcPerfUp.lookup.EsqlEmployeeLookup;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeBulkLoader;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers;
+import dev.softwaregarden.tcPerfUp.misc.SharedContainers;
+import dev.softwaregarden.tcPerfUp.sync.ConnectionFactory;
+import dev.softwaregarden.tcPerfUp.sync.IncrementalEmployeeSync;
+import dev.softwaregarden.tcPerfUp.sync.SyncMetrics;
+import dev.softwaregarden.tcPerfUp.sync.SyncSettings;
+import dev.softwaregarden.tcPerfUp.sync.WatermarkStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+
+@SharedContainers
+@RequiresContainers({RequiresContainers.Kind.MYSQL, RequiresContainers.Kind.ELASTICSEARCH})
+class TestIntF extends BaseIntegrationTest {
+
+    private static final int GENERATED = 1_000;
+
+    @TempDir
+    Path watermarks;
+
+    @Test
+    void shipsOnlyWhatChangedSinceTheWatermark() throws Exception {
+        ConnectionFactory connections = connections();
+        EmployeeBulkLoader.intoDatabase(connections, database, new EmployeeGenerator().employees(3, GENERATED));
+        String index = employeesIndex + "-incremental";
+        ElasticsearchClient client = elasticsearchClient();
+        SyncSettings settings = new SyncSettings(index, 100, 200, 2, Duration.ofSeconds(1), 4, Duration.ZERO, Duration.ZERO);
+
+        CachingEmployeeLookup lookup = new CachingEmployeeLookup(new EsqlEmployeeLookup(client, index), 100, Duration.ofMinutes(1));
+
+        try {
+            SyncMetrics first = sync(settings, connections, client, lookup);
+            Assertions.assertEquals(GENERATED + 2, first.indexed());
+            Assertions.assertEquals(0, lookup.firstNames("Changed").size());
+
+            try (Connection connection = connections.open(); Statement statement = connection.createStatement()) {
+                Assertions.assertEquals(10, statement.executeUpdate("UPDATE employees SET last_name = 'Changed' WHERE id BETWEEN 100 AND 109"));
+            }
+            // a new instance, as if the process had been restarted, only the watermark file is left
+            SyncMetrics second = sync(settings, connections, client, lookup);
+            Assertions.assertEquals(10, second.rowsRead());
+            Assertions.assertEquals(0, second.failed());
+            Assertions.assertTrue(second.lagMillis() >= 0);
+            client.indices().refresh(refresh -> refresh.index(index));
+            ObjectNode changed = client.get(get -> get.index(index).id("105"), ObjectNode.class).source();
+            Assertions.assertEquals("Changed", changed.get("last_name").asText());
+            // the sync told the cache, so the empty result cached before it is gone
+            Assertions.assertEquals(10, lookup.firstNames("Changed").size());
+            Assertions.assertEquals(1, lookup.metrics().invalidations());
+
+            Assertions.assertEquals(0, sync(settings, connections, client, lookup).rowsRead());
+            // with an overlap, what changed shortly before the watermark is read again, in case its transaction committed late
+            SyncSettings overlapping = new SyncSettings(index, 100, 200, 2, Duration.ofSeconds(1), 4, Duration.ZERO, Duration.ofHours(1));
+            Assertions.assertEquals(GENERATED + 2, sync(overlapping, connections, client, lookup).rowsRead());
+        } finally {
+            client.indices().delete(delete -> delete.index(index));
+        }
+    }
+
+    private SyncMetrics sync(SyncSettings settings, ConnectionFactory connections, ElasticsearchClient client, CachingEmployeeLookup lookup) {
+        return new IncrementalEmployeeSync(settings, new WatermarkStore(watermarks.resolve("watermarks.properties")))
+            .addChangeListener(lookup)
+            .run(connections, client);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeBulkLoader;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator;
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator.Employee;
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers;
+import dev.softwaregarden.tcPerfUp.misc.SharedContainers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Loads a batch of generated employees the way the fixtures of any size are loaded; the millions are left to
+ * EmployeeFixtureBenchmark, which loads a million of them per invocation.
+ */
+@SharedContainers
+@RequiresContainers({RequiresContainers.Kind.MYSQL, RequiresContainers.Kind.ELASTICSEARCH})
+class TestIntG extends BaseIntegrationTest {
+
+    private static final long SEED = 7;
+    private static final int FIRST_ID = 3;
+    private static final int GENERATED = 20_000;
+    private static final List<Integer> SAMPLE_IDS = List.of(FIRST_ID, 4_242, GENERATED + FIRST_ID - 1);
+
+    @Test
+    void loadsGeneratedEmployeesIntoTheDatabase() throws Exception {
+        EmployeeBulkLoader.Report report = EmployeeBulkLoader.intoDatabase(connections(), database,
+            new EmployeeGenerator(SEED).employees(FIRST_ID, GENERATED));
+        Assertions.assertEquals(GENERATED, report.rows());
+
+        Connection connection = connection();
+        try (Statement statement = connection.createStatement();
+             ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM employees");
+             PreparedStatement select = connection.prepareStatement(
+                 "SELECT first_name, middle_name, last_name FROM employees WHERE id = ?")) {
+            count.next();
+            Assertions.assertEquals(GENERATED + 2, count.getInt(1));
+            // the same seed generates the same employees, so they can be checked without keeping them around
+            EmployeeGenerator generator = new EmployeeGenerator(SEED);
+            for (int id : SAMPLE_IDS) {
+                select.setInt(1, id);
+                try (ResultSet row = select.executeQuery()) {
+                    Assertions.assertTrue(row.next(), "no employee " + id);
+                    Assertions.assertEquals(generator.employee(id), new Employee(id, row.getString(1), row.getString(2), row.getString(3)));
+                }
+            }
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Test
+    void loadsGeneratedEmployeesIntoElasticsearch() throws Exception {
+        EmployeeBulkLoader.Report report = EmployeeBulkLoader.intoElasticsearch(elasticsearchLoader(), employeesIndex,
+            new EmployeeGenerator(SEED).employees(FIRST_ID, GENERATED));
+        Assertions.assertEquals(GENERATED, report.rows());
+
+        ElasticsearchClient client = elasticsearchClient();
+        Assertions.assertEquals(GENERATED + 2, client.count(count -> count.index(employeesIndex)).count());
+        EmployeeGenerator generator = new EmployeeGenerator(SEED);
+        for (int id : SAMPLE_IDS) {
+            GetResponse<ObjectNode> document = client.get(get -> get.index(employeesIndex).id(String.valueOf(id)), ObjectNode.class);
+            Assertions.assertTrue(document.found(), "no employee " + id);
+            ObjectNode source = document.source();
+            JsonNode middleName = source.get("middle_name");
+            Assertions.assertEquals(generator.employee(id), new Employee(id, source.get("first_name").asText(),
+                middleName == null ? null : middleName.asText(), source.get("last_name").asText()));
+        }
+    }
+}
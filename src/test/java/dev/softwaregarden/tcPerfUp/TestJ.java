@@ -0,0 +1,125 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp;
+
+import dev.softwaregarden.tcPerfUp.misc.VirtualClock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class TestJ {
+
+    private static final long HOUR = Duration.ofHours(1).toNanos();
+
+    private final VirtualClock clock = VirtualClock.get();
+
+    @BeforeEach
+    void virtualClockOnly() {
+        Assumptions.assumeTrue(VirtualClock.VIRTUAL, "the clock is real");
+    }
+
+    @Test
+    void advanceMovesTheClockWithoutSleeping() {
+        long before = clock.nanoTime();
+        Instant instant = clock.instant();
+        Duration skipped = VirtualClock.skipped();
+        clock.advance(Duration.ofHours(1));
+        Assertions.assertTrue(clock.nanoTime() - before >= HOUR);
+        Assertions.assertFalse(clock.instant().isBefore(instant.plus(Duration.ofHours(1))));
+        Assertions.assertEquals(skipped, VirtualClock.skipped());
+    }
+
+    @Test
+    void concurrentSleepsOverlap() throws Exception {
+        long before = clock.nanoTime();
+        // resumed before the threads are closed, as closing them waits for the sleepers
+        try (ExecutorService threads = Executors.newFixedThreadPool(10)) {
+            clock.pause();
+            try {
+                List<Future<?>> sleeps = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    sleeps.add(threads.submit(() -> {
+                        clock.sleep(Duration.ofHours(1));
+                        return null;
+                    }));
+                }
+                awaitSleeping(10);
+                clock.resume();
+                for (Future<?> sleep : sleeps) {
+                    sleep.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                clock.resume();
+            }
+        }
+        long moved = clock.nanoTime() - before;
+        Assertions.assertTrue(moved >= HOUR && moved < 2 * HOUR, () -> "moved " + Duration.ofNanos(moved));
+    }
+
+    @Test
+    void sleepersWakeUpInOrder() throws Exception {
+        try (ExecutorService threads = Executors.newFixedThreadPool(3)) {
+            clock.pause();
+            try {
+                Future<Long> third = threads.submit(() -> sleepThenTell(3));
+                Future<Long> first = threads.submit(() -> sleepThenTell(1));
+                Future<Long> second = threads.submit(() -> sleepThenTell(2));
+                awaitSleeping(3);
+
+                clock.advance(Duration.ofMinutes(90));
+                long firstWokeAt = first.get(10, TimeUnit.SECONDS);
+                Assertions.assertFalse(second.isDone());
+                Assertions.assertFalse(third.isDone());
+
+                clock.advance(Duration.ofHours(1));
+                long secondWokeAt = second.get(10, TimeUnit.SECONDS);
+                Assertions.assertFalse(third.isDone());
+
+                // resumed, the last sleeper moves the clock itself
+                clock.resume();
+                long thirdWokeAt = third.get(10, TimeUnit.SECONDS);
+                Assertions.assertTrue(firstWokeAt < secondWokeAt && secondWokeAt < thirdWokeAt);
+                Assertions.assertEquals(0, clock.sleeping());
+            } finally {
+                clock.resume();
+            }
+        }
+    }
+
+    private long sleepThenTell(int hours) throws InterruptedException {
+        clock.sleep(Duration.ofHours(hours));
+        return clock.nanoTime();
+    }
+
+    private void awaitSleeping(int sleepers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (clock.sleeping() < sleepers) {
+            Assertions.assertTrue(System.nanoTime() < deadline, () -> clock.sleeping() + " of " + sleepers + " sleeping");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * A {@link MySQLContainer} which waits with its wait strategy, an {@link AdaptiveWaitStrategy} by default.
+ * The JDBC containers normally ignore theirs and try to connect every 100 ms instead.
+ */
+public final class AdaptiveMySQLContainer extends MySQLContainer<AdaptiveMySQLContainer> {
+
+    public AdaptiveMySQLContainer(DockerImageName image) {
+        super(image);
+        waitingFor(AdaptiveWaitStrategy.forMySQL());
+    }
+
+    @Override
+    protected void waitUntilContainerStarted() {
+        getWaitStrategy().waitUntilReady(this);
+    }
+}
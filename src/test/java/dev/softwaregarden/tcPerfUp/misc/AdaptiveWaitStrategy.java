@@ -0,0 +1,225 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.ContainerLaunchException;
+import org.testcontainers.containers.JdbcDatabaseContainer;
+import org.testcontainers.containers.output.FrameConsumerResultCallback;
+import org.testcontainers.containers.output.OutputFrame;
+import org.testcontainers.containers.wait.strategy.AbstractWaitStrategy;
+import org.testcontainers.containers.wait.strategy.WaitStrategyTarget;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Waits until the container is ready without idling long after it is: the mapped port is polled from the host,
+ * starting every {@value #INITIAL_DELAY_MILLIS} ms and backing off, and the readiness is then taken from a log line where it's reliable,
+ * or from a check polled the same way otherwise. On the way it records the time to the first log line,
+ * to the port being open and to being ready, which are logged for every container and summed up by {@link #report()}.
+ * Selected with {@code tcPerfUp.wait}: {@code adaptive} (default) or {@code default}, for Testcontainers' own strategies.
+ */
+public class AdaptiveWaitStrategy extends AbstractWaitStrategy {
+
+    private static final Logger logger = Logger.getLogger(AdaptiveWaitStrategy.class.getName());
+
+    public static final boolean ENABLED = !"default".equals(System.getProperty("tcPerfUp.wait", "adaptive").toLowerCase(Locale.ROOT));
+
+    private static final long INITIAL_DELAY_MILLIS = 100;
+    private static final long MAX_DELAY_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    // how long a connection has to stay open to tell a listening server from Docker's proxy hanging up
+    private static final int HANG_UP_MILLIS = 50;
+
+    private static final Map<String, List<Milestones>> milestones = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final int port;
+    private Pattern readyLog;
+    private Predicate<WaitStrategyTarget> readyCheck;
+
+    private AdaptiveWaitStrategy(String name, int port) {
+        this.name = name;
+        this.port = port;
+        this.startupTimeout = Duration.ofMinutes(2);
+    }
+
+    /**
+     * MySQL logs "ready for connections" twice on its first start (the temporary server doing the initialisation,
+     * then the real one), but once when the data is already there, so a query it is. By the time the port is open,
+     * the first query usually succeeds.
+     */
+    public static AdaptiveWaitStrategy forMySQL() {
+        AdaptiveWaitStrategy strategy = new AdaptiveWaitStrategy("mysql", 3306);
+        strategy.readyCheck = target -> {
+            JdbcDatabaseContainer<?> mySQL = (JdbcDatabaseContainer<?>) target;
+            try (Connection connection = mySQL.createConnection("")) {
+                return connection.isValid(1);
+            } catch (Exception e) {
+                return false;
+            }
+        };
+        return strategy;
+    }
+
+    /**
+     * The same line {@code ElasticsearchContainer} waits for, the node logs it once it's started.
+     */
+    public static AdaptiveWaitStrategy forElasticsearch() {
+        AdaptiveWaitStrategy strategy = new AdaptiveWaitStrategy("elasticsearch", 9200);
+        strategy.readyLog = Pattern.compile(".*(\"message\":\\s?\"started[\\s?|\"].*|] started\n$)", Pattern.DOTALL);
+        return strategy;
+    }
+
+    @Override
+    protected void waitUntilReady() {
+        long start = System.nanoTime();
+        long deadline = start + startupTimeout.toNanos();
+        AtomicLong firstLog = new AtomicLong();
+        CountDownLatch logged = new CountDownLatch(1);
+        Consumer<OutputFrame> watcher = frame -> {
+            if (frame.getType() == OutputFrame.OutputType.END) {
+                return;
+            }
+            firstLog.compareAndSet(0, System.nanoTime());
+            if (readyLog != null && readyLog.matcher(frame.getUtf8String()).matches()) {
+                logged.countDown();
+            }
+        };
+        FrameConsumerResultCallback following = new FrameConsumerResultCallback();
+        following.addConsumer(OutputFrame.OutputType.STDOUT, watcher);
+        following.addConsumer(OutputFrame.OutputType.STDERR, watcher);
+        try {
+            DockerClientFactory.instance().client().logContainerCmd(waitStrategyTarget.getContainerId())
+                .withFollowStream(true)
+                .withStdOut(true)
+                .withStdErr(true)
+                .exec(following);
+            poll(deadline, "port " + port + " to be open", this::listening);
+            long portOpen = System.nanoTime();
+            if (readyLog != null) {
+                if (!logged.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    throw new ContainerLaunchException("Timed out waiting for " + name + " to log " + readyLog.pattern());
+                }
+            }
+            if (readyCheck != null) {
+                poll(deadline, name + " to be ready", () -> readyCheck.test(waitStrategyTarget));
+            }
+            long ready = System.nanoTime();
+            Milestones recorded = new Milestones(firstLog.get() == 0 ? -1 : firstLog.get() - start, portOpen - start, ready - start);
+            milestones.computeIfAbsent(name, key -> new CopyOnWriteArrayList<>()).add(recorded);
+            logger.log(Level.INFO, "{0} ready: {1}", new Object[]{name, recorded});
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContainerLaunchException("Interrupted waiting for " + name, e);
+        } finally {
+            // otherwise the output would be followed for as long as the container runs
+            try {
+                following.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not stop following the output of " + name, e);
+            }
+        }
+    }
+
+    private void poll(long deadline, String what, CheckedCondition condition) throws InterruptedException {
+        long delay = INITIAL_DELAY_MILLIS;
+        while (!condition.met()) {
+            if (!waitStrategyTarget.isRunning()) {
+                throw new ContainerLaunchException(name + " stopped while waiting for " + what);
+            }
+            if (System.nanoTime() > deadline) {
+                throw new ContainerLaunchException("Timed out waiting for " + what);
+            }
+            Thread.sleep(delay);
+            delay = Math.min(MAX_DELAY_MILLIS, delay * 3 / 2 + 1);
+        }
+    }
+
+    /**
+     * Connecting from the outside isn't enough, Docker's proxy accepts connections before anything listens inside,
+     * but then it hangs up right away. So the port counts as open once a connection gets a greeting (MySQL)
+     * or stays open waiting for a request (HTTP).
+     */
+    private boolean listening() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(waitStrategyTarget.getHost(), waitStrategyTarget.getMappedPort(port)), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(HANG_UP_MILLIS);
+            try {
+                return socket.getInputStream().read() != -1;
+            } catch (SocketTimeoutException e) {
+                return true;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * E.g. {@code Readiness: mysql 12 start(s), avg first log 180 ms, port open 5012 ms, ready 5030 ms; elasticsearch ...}.
+     */
+    public static String report() {
+        if (milestones.isEmpty()) {
+            return "Readiness: nothing waited for";
+        }
+        return milestones.entrySet().stream()
+            .map(entry -> "%s %d start(s), avg first log %d ms, port open %d ms, ready %d ms".formatted(entry.getKey(), entry.getValue().size(),
+                average(entry.getValue(), Milestones::firstLog), average(entry.getValue(), Milestones::portOpen),
+                average(entry.getValue(), Milestones::ready)))
+            .collect(Collectors.joining("; ", "Readiness: ", ""));
+    }
+
+    private static long average(List<Milestones> recorded, ToLongFunction<Milestones> milestone) {
+        return TimeUnit.NANOSECONDS.toMillis((long) recorded.stream().mapToLong(milestone).filter(nanos -> nanos >= 0).average().orElse(-1));
+    }
+
+    @FunctionalInterface
+    private interface CheckedCondition {
+        boolean met() throws InterruptedException;
+    }
+
+    /**
+     * Nanoseconds since the wait started, i.e. right after the container was started; -1 if it never logged anything.
+     */
+    private record Milestones(long firstLog, long portOpen, long ready) {
+        @Override
+        public String toString() {
+            return "first log %d ms, port open %d ms, ready %d ms".formatted(
+                TimeUnit.NANOSECONDS.toMillis(firstLog), TimeUnit.NANOSECONDS.toMillis(portOpen), TimeUnit.NANOSECONDS.toMillis(ready));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.util.Locale;
+
+/**
+ * What the integration tests run against.
+ * Selected with the {@code tcPerfUp.backend} system property, e.g. {@code -DtcPerfUp.backend=containers}, or {@code -Pnightly}.
+ */
+public enum BackendTier {
+
+    /**
+     * Stand-ins in the test JVM: an H2 database in MySQL mode migrated by the same changelogs ({@link EmbeddedDatabase})
+     * and an HTTP stand-in for Elasticsearch ({@link EmbeddedElasticsearch}). No Docker, milliseconds per test,
+     * but only for the tests which don't need more of MySQL and Elasticsearch than that.
+     */
+    EMBEDDED,
+
+    /**
+     * MySQL and Elasticsearch in containers, set up by all the other switches.
+     */
+    CONTAINERS;
+
+    public static BackendTier fromSystemProperty() {
+        return valueOf(System.getProperty("tcPerfUp.backend", EMBEDDED.name()).toUpperCase(Locale.ROOT));
+    }
+}
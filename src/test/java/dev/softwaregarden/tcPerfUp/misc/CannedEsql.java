@@ -0,0 +1,95 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.DefaultTransportOptions;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.Endpoint;
+import co.elastic.clients.transport.TransportOptions;
+import co.elastic.clients.transport.endpoints.BinaryDataResponse;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ES|QL responses made up from {@link EmployeeGenerator}, and an {@link ElasticsearchClient} answering every request
+ * with one, for reading results without an Elasticsearch.
+ */
+public final class CannedEsql {
+
+    private CannedEsql() {
+    }
+
+    /**
+     * The row-oriented JSON response to {@code FROM employees | KEEP id, first_name, middle_name, last_name}.
+     */
+    public static byte[] employees(EmployeeGenerator generator, int firstId, int count) {
+        StringBuilder json = new StringBuilder(count * 48).append("""
+            {"columns":[{"name":"id","type":"long"},{"name":"first_name","type":"keyword"},\
+            {"name":"middle_name","type":"keyword"},{"name":"last_name","type":"keyword"}],"values":[""");
+        generator.employees(firstId, count).forEach(employee -> {
+            json.append('[').append(employee.id()).append(',');
+            string(json, employee.firstName()).append(',');
+            string(json, employee.middleName()).append(',');
+            string(json, employee.lastName()).append("],");
+        });
+        if (count > 0) {
+            json.setLength(json.length() - 1);
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder string(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        return json.append('"').append(JsonStringEncoder.getInstance().quoteAsString(value)).append('"');
+    }
+
+    public static ElasticsearchClient client(byte[] response) {
+        return new ElasticsearchClient(new Transport(response, new JacksonJsonpMapper()));
+    }
+
+    private record Transport(byte[] response, JsonpMapper jsonpMapper) implements ElasticsearchTransport {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request, Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                      TransportOptions options) {
+            return (ResponseT) BinaryDataResponse.of(response, "application/json");
+        }
+
+        @Override
+        public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request, Endpoint<RequestT, ResponseT, ErrorT> endpoint,
+                                                                                             TransportOptions options) {
+            return CompletableFuture.completedFuture(performRequest(request, endpoint, options));
+        }
+
+        @Override
+        public TransportOptions options() {
+            return DefaultTransportOptions.EMPTY;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
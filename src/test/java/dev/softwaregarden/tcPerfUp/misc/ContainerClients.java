@@ -0,0 +1,108 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.elasticsearch.client.RestClient;
+import org.testcontainers.containers.JdbcDatabaseContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clients of the containers, created on first use and kept until the container stops (see {@link ContainerRegistry#closeOnStop}):
+ * one {@link ElasticsearchClient} per Elasticsearch container, and a small connection pool per database of a MySQL container.
+ */
+public final class ContainerClients {
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+
+    private static final Map<String, ElasticsearchClient> elasticsearchClients = new ConcurrentHashMap<>();
+    private static final Map<String, JdbcConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger elasticsearchClientsCreated = new AtomicInteger();
+    private static final AtomicInteger elasticsearchClientRequests = new AtomicInteger();
+    private static final AtomicInteger connectionsOpened = new AtomicInteger();
+    private static final AtomicInteger connectionsBorrowed = new AtomicInteger();
+
+    private ContainerClients() {
+    }
+
+    public static ElasticsearchClient elasticsearch(ElasticsearchContainer esContainer, JsonpMapper mapper) {
+        elasticsearchClientRequests.incrementAndGet();
+        return elasticsearchClients.computeIfAbsent(esContainer.getContainerId(), id -> {
+            final BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY,
+                new UsernamePasswordCredentials(EsHttpLoader.USERNAME, EsHttpLoader.PASSWORD));
+
+            final boolean secured = ElasticsearchContainerHelper.isSecured(esContainer);
+            final RestClient restClient = RestClient.builder(
+                    new HttpHost(esContainer.getHost(), esContainer.getMappedPort(9200), ElasticsearchContainerHelper.scheme(esContainer)))
+                .setHttpClientConfigCallback(httpClientBuilder -> secured
+                    ? httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
+                        .setSSLContext(esContainer.createSslContextFromCa())
+                    : httpClientBuilder
+                )
+                .build();
+            final RestClientTransport transport = new RestClientTransport(restClient, mapper);
+
+            elasticsearchClientsCreated.incrementAndGet();
+            ContainerRegistry.closeOnStop(esContainer, () -> {
+                elasticsearchClients.remove(id);
+                transport.close();
+            });
+            return new ElasticsearchClient(transport);
+        });
+    }
+
+    /**
+     * A pooled connection to the given database of the container; closing it gives it back to the pool.
+     */
+    public static Connection connection(JdbcDatabaseContainer<?> dbContainer, String database) throws SQLException {
+        String key = dbContainer.getContainerId() + "/" + database;
+        return connectionPools.computeIfAbsent(key, k -> {
+            JdbcConnectionPool pool = new JdbcConnectionPool(() -> DbContainerHelper.openConnection(dbContainer, database),
+                MAX_IDLE_CONNECTIONS, connectionsOpened, connectionsBorrowed);
+            ContainerRegistry.closeOnStop(dbContainer, () -> {
+                connectionPools.remove(k);
+                pool.close();
+            });
+            return pool;
+        }).borrow();
+    }
+
+    /**
+     * Every client reused saves building its TLS context and doing a TLS handshake, every connection reused saves
+     * connecting and authenticating.
+     */
+    public static String report() {
+        return "Container clients: %d Elasticsearch client(s) for %d request(s), %d handshake(s) avoided; %d JDBC connection(s) opened for %d borrowed, %d avoided"
+            .formatted(elasticsearchClientsCreated.get(), elasticsearchClientRequests.get(),
+                elasticsearchClientRequests.get() - elasticsearchClientsCreated.get(),
+                connectionsOpened.get(), connectionsBorrowed.get(), connectionsBorrowed.get() - connectionsOpened.get());
+    }
+}
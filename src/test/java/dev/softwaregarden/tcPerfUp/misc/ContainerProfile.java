@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How durable, and thus how slow, the containers are. Selected with the {@code tcPerfUp.profile} system property,
+ * e.g. {@code -DtcPerfUp.profile=prod_like}; {@code -DtcPerfUp.es.security=false} additionally turns off
+ * Elasticsearch security and TLS, whatever the profile.
+ */
+public enum ContainerProfile {
+
+    /**
+     * Data on tmpfs (unless it's baked into the image, see {@link PrebakedImages}), nothing flushed to disk on commit,
+     * no doublewrite buffer, no binlog, no performance schema; Elasticsearch with a smaller heap and without ML and GeoIP downloads
+     * (Testcontainers turns the disk watermarks off anyway).
+     * Whatever a crash would lose, the container is thrown away anyway.
+     */
+    FAST_EPHEMERAL,
+
+    /**
+     * The images' own settings, as they'd run in production.
+     */
+    PROD_LIKE;
+
+    public static final boolean ES_SECURITY = Boolean.parseBoolean(System.getProperty("tcPerfUp.es.security", "true"));
+
+    private static final String MYSQL_DATADIR = "/var/lib/mysql";
+    private static final String ELASTICSEARCH_DATADIR = "/usr/share/elasticsearch/data";
+
+    public static ContainerProfile fromSystemProperty() {
+        return valueOf(System.getProperty("tcPerfUp.profile", FAST_EPHEMERAL.name()).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * E.g. {@code FAST_EPHEMERAL} or {@code PROD_LIKE-insecure}.
+     */
+    public String variant() {
+        return ES_SECURITY ? name() : name() + "-insecure";
+    }
+
+    public MySQLContainer<?> configure(MySQLContainer<?> mySQL, boolean dataBakedIn) {
+        List<String> arguments = new ArrayList<>();
+        if (dataBakedIn) {
+            arguments.add("--datadir=" + PrebakedImages.MYSQL_DATADIR);
+        }
+        if (this == FAST_EPHEMERAL) {
+            if (!dataBakedIn) {
+                mySQL.withTmpFs(Map.of(MYSQL_DATADIR, "rw"));
+            }
+            arguments.addAll(List.of(
+                "--innodb-flush-log-at-trx-commit=0",
+                "--innodb-doublewrite=OFF",
+                "--skip-log-bin",
+                "--performance-schema=OFF"));
+        }
+        if (!arguments.isEmpty()) {
+            mySQL.withCommand(arguments.toArray(new String[0]));
+        }
+        return mySQL;
+    }
+
+    public ElasticsearchContainer configure(ElasticsearchContainer elasticsearch, boolean dataBakedIn) {
+        if (this == FAST_EPHEMERAL) {
+            if (!dataBakedIn) {
+                // the data directory has to be writable by the elasticsearch user
+                elasticsearch.withTmpFs(Map.of(ELASTICSEARCH_DATADIR, "rw,mode=1777"));
+            }
+            elasticsearch
+                .withEnv("ES_JAVA_OPTS", "-Xms512m -Xmx512m")
+                .withEnv("xpack.ml.enabled", "false")
+                .withEnv("ingest.geoip.downloader.enabled", "false");
+        }
+        if (!ES_SECURITY) {
+            elasticsearch
+                .withEnv("xpack.security.enabled", "false")
+                .withCertPath("");
+        }
+        return elasticsearch;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers.Kind;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.lifecycle.Startables;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands containers to the tests. Classes annotated with {@link SharedContainers} get the same, already running
+ * instance for a given key for the whole JVM; all the others get a fresh container, which is stopped on release.
+ * Shared containers are stopped when the JUnit launcher session closes, or by the JVM shutdown hook at the latest.
+ * Each surefire fork is a JVM of its own, so the forks don't share containers with each other, and the classes of a fork,
+ * which run one after another, don't share them with anything running at the same time.
+ */
+public final class ContainerRegistry {
+
+    private static final Logger logger = Logger.getLogger(ContainerRegistry.class.getName());
+
+    private static final Map<String, CompletableFuture<GenericContainer<?>>> shared = new ConcurrentHashMap<>();
+    private static final Set<String> claimed = ConcurrentHashMap.newKeySet();
+    private static final Map<Kind, Supplier<? extends GenericContainer<?>>> factories = new ConcurrentHashMap<>();
+    private static final Map<String, List<AutoCloseable>> closeOnStop = new ConcurrentHashMap<>();
+    private static final AtomicInteger starts = new AtomicInteger();
+    private static final AtomicInteger reuses = new AtomicInteger();
+    private static final AtomicBoolean shutDown = new AtomicBoolean();
+
+    private static final ExecutorService starter = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "container-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ContainerRegistry::shutdown, "container-registry-shutdown"));
+    }
+
+    private ContainerRegistry() {
+    }
+
+    public static boolean isShared(Class<?> testClass) {
+        return testClass.isAnnotationPresent(SharedContainers.class);
+    }
+
+    /**
+     * Returns a started container for the given test class: the shared one stored under {@code key},
+     * or a brand new one if the class didn't opt in to sharing.
+     */
+    public static <T extends GenericContainer<?>> T acquire(Class<?> testClass, String key, Supplier<T> factory) {
+        return join(acquireAsync(testClass, key, factory));
+    }
+
+    /**
+     * Like {@link #acquire(Class, String, Supplier)}, but starts the container in the background,
+     * so that several containers (and whatever needs to be done with them once they're up) can start side by side.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends GenericContainer<?>> CompletableFuture<T> acquireAsync(Class<?> testClass, String key, Supplier<T> factory) {
+        if (!isShared(testClass)) {
+            return CompletableFuture.supplyAsync(() -> start(testClass.getName(), key, factory.get()), starter);
+        }
+        boolean reuse = !claimed.add(key);
+        return sharedAsync(testClass.getName(), key, factory).thenApply(container -> {
+            if (reuse) {
+                reuses.incrementAndGet();
+            }
+            return (T) container;
+        });
+    }
+
+    /**
+     * Starts the shared container stored under {@code key} in the background, unless it's already there,
+     * so that it's ready (or at least closer to ready) by the time it's acquired.
+     */
+    public static void warmUp(String key, Supplier<? extends GenericContainer<?>> factory) {
+        sharedAsync("", key, factory);
+    }
+
+    /**
+     * Tells the registry how to create the shared container of the given kind, so that it can be warmed up by kind.
+     */
+    public static void register(Kind kind, Supplier<? extends GenericContainer<?>> factory) {
+        factories.put(kind, factory);
+    }
+
+    /**
+     * Starts the shared container of the given kind in the background, unless it's already there.
+     *
+     * @return false if no factory has been registered for that kind
+     */
+    public static boolean warmUp(Kind kind) {
+        Supplier<? extends GenericContainer<?>> factory = factories.get(kind);
+        if (factory == null) {
+            return false;
+        }
+        warmUp(key(kind), factory);
+        return true;
+    }
+
+    /**
+     * The key the shared container of the given kind is stored under.
+     */
+    public static String key(Kind kind) {
+        return kind.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static CompletableFuture<GenericContainer<?>> sharedAsync(String testClass, String key, Supplier<? extends GenericContainer<?>> factory) {
+        if (shutDown.get()) {
+            throw new IllegalStateException("Container registry has already been shut down");
+        }
+        CompletableFuture<GenericContainer<?>> created = new CompletableFuture<>();
+        CompletableFuture<GenericContainer<?>> existing = shared.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        starter.execute(() -> {
+            try {
+                created.complete(start(testClass, key, factory.get()));
+            } catch (RuntimeException e) {
+                shared.remove(key, created);
+                claimed.remove(key);
+                created.completeExceptionally(e);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * {@link CompletableFuture#join()}, rethrowing what actually went wrong instead of a {@link CompletionException}.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the container, unless it's shared, in which case it stays up for the next test.
+     */
+    public static void release(Class<?> testClass, GenericContainer<?> container) {
+        if (container != null && !isShared(testClass)) {
+            stop(container);
+        }
+    }
+
+    /**
+     * Registers a resource bound to the container, e.g. a client, to be closed right before the container stops.
+     */
+    public static void closeOnStop(GenericContainer<?> container, AutoCloseable resource) {
+        closeOnStop.computeIfAbsent(container.getContainerId(), id -> new CopyOnWriteArrayList<>()).add(resource);
+    }
+
+    /**
+     * Stops the shared container stored under {@code key}, if there is one, and forgets it, so that the next
+     * {@link #acquire} starts it anew. Unlike {@link #shutdown()}, it leaves the registry and the other containers be.
+     */
+    public static void stopShared(String key) {
+        CompletableFuture<GenericContainer<?>> removed = shared.remove(key);
+        claimed.remove(key);
+        if (removed != null) {
+            stop(join(removed));
+        }
+    }
+
+    public static int starts() {
+        return starts.get();
+    }
+
+    public static int startsSaved() {
+        return reuses.get();
+    }
+
+    public static void shutdown() {
+        if (!shutDown.compareAndSet(false, true)) {
+            return;
+        }
+        shared.values().stream()
+            .map(future -> future.getNow(null))
+            .filter(Objects::nonNull)
+            .forEach(ContainerRegistry::stop);
+        shared.clear();
+        logger.log(Level.INFO, "Container registry: {0} container start(s), {1} start(s) saved by sharing",
+            new Object[]{starts.get(), reuses.get()});
+    }
+
+    private static void stop(GenericContainer<?> container) {
+        List<AutoCloseable> resources = closeOnStop.remove(container.getContainerId());
+        if (resources != null) {
+            for (AutoCloseable resource : resources) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Could not close " + resource, e);
+                }
+            }
+        }
+        container.stop();
+    }
+
+    private static <T extends GenericContainer<?>> T start(String testClass, String key, T container) {
+        // starts whatever the container dependsOn() first, all of it in parallel where possible
+        PhaseEvents.record(new PhaseEvents.ContainerStart(testClass, key, container.getClass().getSimpleName()),
+            () -> join(Startables.deepStart(container)));
+        starts.incrementAndGet();
+        return container;
+    }
+}
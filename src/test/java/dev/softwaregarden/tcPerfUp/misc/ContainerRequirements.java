@@ -0,0 +1,86 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers.Kind;
+
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resolves {@link RequiresContainers} for a test, and counts how often each kind of container was needed up front,
+ * started only on first access, or not needed at all.
+ */
+public final class ContainerRequirements {
+
+    private static final Map<Kind, AtomicInteger> upFront = counters();
+    private static final Map<Kind, AtomicInteger> lazy = counters();
+    private static final Map<Kind, AtomicInteger> skipped = counters();
+
+    private ContainerRequirements() {
+    }
+
+    /**
+     * The containers required by the test method, or by its class if the method doesn't say.
+     */
+    public static Set<Kind> of(Class<?> testClass, Optional<Method> testMethod) {
+        RequiresContainers requires = testMethod
+            .map(method -> method.getAnnotation(RequiresContainers.class))
+            .orElseGet(() -> testClass.getAnnotation(RequiresContainers.class));
+        Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+        if (requires != null) {
+            kinds.addAll(Set.of(requires.value()));
+        }
+        return kinds;
+    }
+
+    public static void startedUpFront(Kind kind) {
+        upFront.get(kind).incrementAndGet();
+    }
+
+    public static void startedLazily(Kind kind) {
+        lazy.get(kind).incrementAndGet();
+    }
+
+    public static void skipped(Kind kind) {
+        skipped.get(kind).incrementAndGet();
+    }
+
+    /**
+     * E.g. {@code Container requirements: MYSQL up front 12, lazily 0, skipped 3; ELASTICSEARCH up front 6, lazily 1, skipped 8}.
+     */
+    public static String report() {
+        return Stream.of(Kind.values())
+            .map(kind -> "%s up front %d, lazily %d, skipped %d".formatted(kind, upFront.get(kind).get(), lazy.get(kind).get(), skipped.get(kind).get()))
+            .collect(Collectors.joining("; ", "Container requirements: ", ""));
+    }
+
+    private static Map<Kind, AtomicInteger> counters() {
+        Map<Kind, AtomicInteger> counters = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            counters.put(kind, new AtomicInteger());
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import dev.softwaregarden.tcPerfUp.misc.RequiresContainers.Kind;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts the shared containers needed by the {@link SharedContainers} classes of the test plan as soon as its execution starts,
+ * so that they boot while the unit tests run, and the integration classes only wait for whatever is left of the startup.
+ * The plan isn't known yet when the launcher session opens, hence it's a {@link TestExecutionListener},
+ * registered with the {@link java.util.ServiceLoader} like {@link SuiteSessionListener}.
+ */
+public class ContainerWarmUpListener implements TestExecutionListener {
+
+    private static final Logger logger = Logger.getLogger(ContainerWarmUpListener.class.getName());
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        if (BackendTier.fromSystemProperty() != BackendTier.CONTAINERS) {
+            return;
+        }
+        Set<Class<?>> sharedClasses = new HashSet<>();
+        Set<Kind> required = EnumSet.noneOf(Kind.class);
+        testPlan.getRoots().stream()
+            .flatMap(root -> testPlan.getDescendants(root).stream())
+            .forEach(identifier -> {
+                Class<?> testClass = testClassOf(identifier);
+                if (testClass != null && ContainerRegistry.isShared(testClass) && !skippedAsUnchanged(testClass)) {
+                    sharedClasses.add(testClass);
+                    required.addAll(ContainerRequirements.of(testClass, methodOf(identifier)));
+                }
+            });
+        if (required.isEmpty()) {
+            return;
+        }
+        sharedClasses.forEach(ContainerWarmUpListener::initialise);
+        Set<Kind> warmingUp = EnumSet.noneOf(Kind.class);
+        for (Kind kind : required) {
+            if (ContainerRegistry.warmUp(kind)) {
+                warmingUp.add(kind);
+            }
+        }
+        logger.log(Level.INFO, "Warming up {0} for {1} shared class(es) of the test plan",
+            new Object[]{warmingUp, sharedClasses.size()});
+    }
+
+    private static boolean skippedAsUnchanged(Class<?> testClass) {
+        return TestImpactExtension.appliesTo(testClass) && TestImpact.unchanged(testClass);
+    }
+
+    private static Class<?> testClassOf(TestIdentifier identifier) {
+        TestSource source = identifier.getSource().orElse(null);
+        if (source instanceof ClassSource classSource) {
+            return classSource.getJavaClass();
+        }
+        if (source instanceof MethodSource methodSource) {
+            return methodSource.getJavaClass();
+        }
+        return null;
+    }
+
+    private static Optional<Method> methodOf(TestIdentifier identifier) {
+        return identifier.getSource()
+            .filter(MethodSource.class::isInstance)
+            .map(source -> ((MethodSource) source).getJavaMethod());
+    }
+
+    // the classes are only loaded for discovery; initialising them lets them register their factories with the registry
+    private static void initialise(Class<?> testClass) {
+        try {
+            Class.forName(testClass.getName(), true, testClass.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
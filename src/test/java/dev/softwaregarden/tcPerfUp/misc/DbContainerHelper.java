@@ -24,18 +24,165 @@ import liquibase.command.core.UpdateCommandStep;
 import liquibase.exception.CommandExecutionException;
 import org.testcontainers.containers.JdbcDatabaseContainer;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 public interface DbContainerHelper {
 
+    Logger logger = Logger.getLogger(DbContainerHelper.class.getName());
+
+    static void prepareDatabase(JdbcDatabaseContainer<?> dbContainer, String changelog, DbResetMode mode) {
+        prepareDatabase(dbContainer, dbContainer.getDatabaseName(), changelog, mode);
+    }
+
+    /**
+     * Brings the database to its freshly migrated state. The first time a database is seen it's created if needed,
+     * migrated with Liquibase, and a {@link DbSnapshot} is taken; afterwards it's reset in the given mode.
+     */
+    static void prepareDatabase(JdbcDatabaseContainer<?> dbContainer, String database, String changelog, DbResetMode mode) {
+        long start = System.nanoTime();
+        String snapshotKey = dbContainer.getContainerId() + "/" + database;
+        DbSnapshot snapshot = DbSnapshot.forContainer(snapshotKey);
+        if (snapshot == null || mode == DbResetMode.MIGRATE) {
+            PhaseEvents.record(new PhaseEvents.Migration(database, "migrate"), () -> {
+                createDatabase(dbContainer, database);
+                runLiquibaseMigrations(dbContainer, database, changelog);
+                if (snapshot == null && mode != DbResetMode.MIGRATE) {
+                    try (Connection connection = connect(dbContainer, database)) {
+                        DbSnapshot.take(snapshotKey, connection, mode);
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            logger.log(Level.INFO, "Database {0} migrated in {1} ms",
+                new Object[]{database, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+            return;
+        }
+        if (mode == DbResetMode.ROLLBACK) {
+            return;
+        }
+        PhaseEvents.record(new PhaseEvents.Migration(database, "reset " + mode), () -> {
+            try (Connection connection = connect(dbContainer, database)) {
+                snapshot.restore(connection);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        logger.log(Level.INFO, "Database {0} reset ({1}) in {2} µs",
+            new Object[]{database, mode, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)});
+    }
+
+    /**
+     * Borrows a {@link ContainerClients#connection pooled} connection to the given database of the container.
+     */
+    static Connection connect(JdbcDatabaseContainer<?> dbContainer, String database) throws SQLException {
+        return ContainerClients.connection(dbContainer, database);
+    }
+
+    /**
+     * Opens a connection to the given database of the container, which doesn't have to be the one it was started with.
+     */
+    static Connection openConnection(JdbcDatabaseContainer<?> dbContainer, String database) throws SQLException {
+        Connection connection = dbContainer.createConnection("");
+        if (!database.equals(dbContainer.getDatabaseName())) {
+            connection.setCatalog(database);
+        }
+        return connection;
+    }
+
+    /**
+     * Opens the connection a test should use in {@link DbResetMode#ROLLBACK} mode.
+     */
+    static Connection beginTestTransaction(JdbcDatabaseContainer<?> dbContainer, String database) {
+        try {
+            Connection connection = connect(dbContainer, database);
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void rollbackTestTransaction(Connection connection) {
+        try (connection) {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Truncates the database and refills it from its {@link DbSnapshot}, for a test which committed outside of its transaction
+     * in {@link DbResetMode#ROLLBACK} mode, so that the next test doesn't see its rows.
+     */
+    static void restoreSnapshot(JdbcDatabaseContainer<?> dbContainer, String database) {
+        long start = System.nanoTime();
+        DbSnapshot snapshot = DbSnapshot.forContainer(dbContainer.getContainerId() + "/" + database);
+        PhaseEvents.record(new PhaseEvents.Migration(database, "reset " + DbResetMode.TRUNCATE), () -> {
+            try (Connection connection = connect(dbContainer, database)) {
+                snapshot.restore(connection);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        logger.log(Level.INFO, "Database {0} committed to outside of the test transaction, restored in {1} µs",
+            new Object[]{database, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)});
+    }
+
     static void runLiquibaseMigrations(JdbcDatabaseContainer<?> dbContainer, String changelog) {
+        runLiquibaseMigrations(dbContainer, dbContainer.getDatabaseName(), changelog);
+    }
+
+    static void runLiquibaseMigrations(JdbcDatabaseContainer<?> dbContainer, String database, String changelog) {
+        runLiquibaseMigrations(jdbcUrl(dbContainer, database), dbContainer.getUsername(), dbContainer.getPassword(), changelog);
+    }
+
+    static void runLiquibaseMigrations(String jdbcUrl, String username, String password, String changelog) {
         try {
             new CommandScope(UpdateCommandStep.COMMAND_NAME[0])
                 .addArgumentValue(CommonArgumentNames.CHANGELOG_FILE.getArgumentName(), changelog)
-                .addArgumentValue(CommonArgumentNames.URL.getArgumentName(), dbContainer.getJdbcUrl())
-                .addArgumentValue(CommonArgumentNames.USERNAME.getArgumentName(), dbContainer.getUsername())
-                .addArgumentValue(CommonArgumentNames.PASSWORD.getArgumentName(), dbContainer.getPassword())
+                .addArgumentValue(CommonArgumentNames.URL.getArgumentName(), jdbcUrl)
+                .addArgumentValue(CommonArgumentNames.USERNAME.getArgumentName(), username)
+                .addArgumentValue(CommonArgumentNames.PASSWORD.getArgumentName(), password)
                 .execute();
         } catch (CommandExecutionException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * The container's JDBC URL, with its database swapped for the given one.
+     */
+    static String jdbcUrl(JdbcDatabaseContainer<?> dbContainer, String database) {
+        String url = dbContainer.getJdbcUrl();
+        if (database.equals(dbContainer.getDatabaseName())) {
+            return url;
+        }
+        int paramsAt = url.indexOf('?');
+        String withoutParams = paramsAt < 0 ? url : url.substring(0, paramsAt);
+        return withoutParams.substring(0, withoutParams.lastIndexOf('/') + 1) + database + (paramsAt < 0 ? "" : url.substring(paramsAt));
+    }
+
+    /**
+     * Creates an extra database, as root, since the container's user only gets the database the container started with.
+     * Relies on the root password being the user's one, which is how {@code MySQLContainer} sets it up.
+     */
+    private static void createDatabase(JdbcDatabaseContainer<?> dbContainer, String database) {
+        if (database.equals(dbContainer.getDatabaseName())) {
+            return;
+        }
+        try (Connection connection = DriverManager.getConnection(dbContainer.getJdbcUrl(), "root", dbContainer.getPassword());
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE IF NOT EXISTS `" + database + "`");
+            statement.execute("GRANT ALL PRIVILEGES ON `" + database + "`.* TO '" + dbContainer.getUsername() + "'@'%'");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.util.Locale;
+
+/**
+ * How the database is brought back to its freshly migrated state before each test.
+ * Selected with the {@code tcPerfUp.db.reset} system property, e.g. {@code -DtcPerfUp.db.reset=clone}.
+ */
+public enum DbResetMode {
+
+    /**
+     * Runs the Liquibase changelog before every test, like it used to be.
+     * On an already migrated database that's just (slow) bookkeeping and rows changed by the previous test stay.
+     */
+    MIGRATE,
+
+    /**
+     * Truncates the tables and bulk re-inserts the rows captured right after the first migration.
+     */
+    TRUNCATE,
+
+    /**
+     * Truncates the tables and refills them server-side from template copies made right after the first migration.
+     */
+    CLONE,
+
+    /**
+     * Runs each test in a transaction, which is rolled back afterwards.
+     * MySQL commits DDL implicitly, so it's only good for tests which don't alter the schema.
+     * What a test commits on connections of its own (e.g. the bulk loader's) can't be rolled back,
+     * so the database of such a test is truncated and refilled afterwards, like in {@link #TRUNCATE} mode.
+     */
+    ROLLBACK;
+
+    public static DbResetMode fromSystemProperty() {
+        return valueOf(System.getProperty("tcPerfUp.db.reset", TRUNCATE.name()).toUpperCase(Locale.ROOT));
+    }
+}
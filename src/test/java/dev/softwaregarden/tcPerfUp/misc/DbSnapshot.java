@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contents of the tables of a freshly migrated database, kept so that the database can be reset between tests
+ * without going through Liquibase again. Snapshots are kept per container, so a new container is migrated anew.
+ */
+public final class DbSnapshot {
+
+    static final String TEMPLATE_PREFIX = "tpl_";
+    private static final int ROWS_PER_INSERT = 1_000;
+
+    private static final Map<String, DbSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final List<TableData> tables;
+    private final boolean withTemplates;
+
+    private DbSnapshot(List<TableData> tables, boolean withTemplates) {
+        this.tables = tables;
+        this.withTemplates = withTemplates;
+    }
+
+    static DbSnapshot forContainer(String containerId) {
+        return snapshots.get(containerId);
+    }
+
+    static DbSnapshot take(String containerId, Connection connection, DbResetMode mode) throws SQLException {
+        List<TableData> tables = new ArrayList<>();
+        for (String table : userTables(connection)) {
+            // ROLLBACK falls back to truncating when a test commits on connections of its own
+            boolean withRows = mode == DbResetMode.TRUNCATE || mode == DbResetMode.ROLLBACK;
+            tables.add(withRows ? read(connection, table) : new TableData(table, List.of(), List.of()));
+            if (mode == DbResetMode.CLONE) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE IF EXISTS " + TEMPLATE_PREFIX + table);
+                    statement.execute("CREATE TABLE " + TEMPLATE_PREFIX + table + " LIKE " + table);
+                    statement.execute("INSERT INTO " + TEMPLATE_PREFIX + table + " SELECT * FROM " + table);
+                }
+            }
+        }
+        DbSnapshot snapshot = new DbSnapshot(Collections.unmodifiableList(tables), mode == DbResetMode.CLONE);
+        snapshots.put(containerId, snapshot);
+        return snapshot;
+    }
+
+    void restore(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            try {
+                for (TableData table : tables) {
+                    statement.execute("TRUNCATE TABLE " + table.name());
+                    if (withTemplates) {
+                        statement.execute("INSERT INTO " + table.name() + " SELECT * FROM " + TEMPLATE_PREFIX + table.name());
+                    } else {
+                        insert(connection, table);
+                    }
+                }
+            } finally {
+                // the connection goes back to the pool
+                statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+        }
+    }
+
+    private static List<String> userTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet resultSet = metaData.getTables(connection.getCatalog(), null, "%", new String[]{"TABLE"})) {
+            while (resultSet.next()) {
+                String table = resultSet.getString("TABLE_NAME");
+                String lowerCase = table.toLowerCase(Locale.ROOT);
+                if (!lowerCase.startsWith("databasechangelog") && !lowerCase.startsWith(TEMPLATE_PREFIX)) {
+                    tables.add(table);
+                }
+            }
+        }
+        return tables;
+    }
+
+    private static TableData read(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table)) {
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            List<String> columns = new ArrayList<>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                columns.add(resultSet.getMetaData().getColumnName(i));
+            }
+            List<Object[]> rows = new ArrayList<>();
+            while (resultSet.next()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                rows.add(row);
+            }
+            return new TableData(table, List.copyOf(columns), Collections.unmodifiableList(rows));
+        }
+    }
+
+    private static void insert(Connection connection, TableData table) throws SQLException {
+        List<Object[]> rows = table.rows();
+        for (int from = 0; from < rows.size(); from += ROWS_PER_INSERT) {
+            List<Object[]> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_INSERT));
+            try (PreparedStatement insert = connection.prepareStatement(insertSql(table, chunk.size()))) {
+                int parameter = 1;
+                for (Object[] row : chunk) {
+                    for (Object value : row) {
+                        insert.setObject(parameter++, value);
+                    }
+                }
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    private static String insertSql(TableData table, int rowCount) {
+        String placeholders = "(" + String.join(", ", Collections.nCopies(table.columns().size(), "?")) + ")";
+        return "INSERT INTO " + table.name() + " (" + String.join(", ", table.columns()) + ") VALUES "
+            + String.join(", ", Collections.nCopies(rowCount, placeholders));
+    }
+
+    private record TableData(String name, List<String> columns, List<Object[]> rows) {
+    }
+}
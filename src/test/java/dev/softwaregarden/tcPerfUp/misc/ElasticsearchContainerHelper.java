@@ -22,6 +22,7 @@ import org.testcontainers.elasticsearch.ElasticsearchContainer;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,21 +30,100 @@ public interface ElasticsearchContainerHelper {
 
     Logger logger = Logger.getLogger(ElasticsearchContainerHelper.class.getName());
 
+    /**
+     * {@code http} (default) streams the calls through {@link EsHttpLoader},
+     * {@code exec} runs curl inside the container, once per call, with the whole payload as an argument.
+     */
+    String LOADER = System.getProperty("tcPerfUp.es.loader", "http");
+
+    /**
+     * {@code clone} (default, needs the http loader) seeds a read-only template index once per cluster
+     * and gives each test a {@code _clone} of it, {@code replay} runs all the calls for each test.
+     */
+    String RESET = System.getProperty("tcPerfUp.es.reset", "clone");
+
+    String INDEX = "employees";
+    String TEMPLATE_SUFFIX = "-template";
+
+    /**
+     * Whether the container runs with security, and thus TLS, on; see {@link ContainerProfile#ES_SECURITY}.
+     */
+    static boolean isSecured(ElasticsearchContainer elasticsearch) {
+        return !"false".equals(elasticsearch.getEnvMap().get("xpack.security.enabled"));
+    }
+
+    static String scheme(ElasticsearchContainer elasticsearch) {
+        return isSecured(elasticsearch) ? "https" : "http";
+    }
+
     static void prepareData(ElasticsearchContainer elasticsearch, String dir) {
+        if (!"exec".equals(LOADER) && "clone".equals(RESET)) {
+            PhaseEvents.record(new PhaseEvents.DataPrep(INDEX, "clone"), () -> resetFromTemplate(elasticsearch, dir, INDEX));
+        } else {
+            PhaseEvents.record(new PhaseEvents.DataPrep(INDEX, "replay " + LOADER), () -> replay(elasticsearch, dir, INDEX, LOADER));
+        }
+    }
 
-        logger.log(Level.INFO, "Running Elasticsearch migrations");
-        List<EsCurlCall> toCall = List.of(
+    /**
+     * Replaces the index with a fresh copy of the template, which costs the deletion and a single {@code _clone},
+     * as cloning only hard-links the segments. The template is seeded by the first call on a cluster.
+     */
+    static void resetFromTemplate(ElasticsearchContainer elasticsearch, String dir, String index) {
+        long start = System.nanoTime();
+        EsHttpLoader loader = EsHttpLoader.forContainer(elasticsearch);
+        String template = INDEX + TEMPLATE_SUFFIX;
+        String cloneEndpoint = "/" + template + "/_clone/" + index;
+        String cloneBody = """
+            {"settings": {"index.blocks.write": null}}""";
+
+        loader.send("DELETE", "/" + index + "?ignore_unavailable=true", null, "application/json");
+        // a template which is still being seeded (by a test sharing the cluster) exists, but can't be cloned yet
+        synchronized (loader) {
+            if (!loader.sendIfFound("POST", cloneEndpoint, EsHttpLoader.json(cloneBody), "application/json")) {
+                replay(elasticsearch, dir, template, "http");
+                // the clone is made from the last Lucene commit, so whatever's only been refreshed would be missing
+                loader.send("POST", "/" + template + "/_flush", null, "application/json");
+                loader.send("PUT", "/" + template + "/_settings", EsHttpLoader.json("""
+                    {"index.blocks.write": true, "index.number_of_replicas": 0}"""), "application/json");
+                loader.send("POST", cloneEndpoint, EsHttpLoader.json(cloneBody), "application/json");
+            }
+        }
+        logger.log(Level.INFO, "Index {0} reset from {1} in {2} ms",
+            new Object[]{index, template, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+    }
+
+    /**
+     * The calls creating and filling the index, also replayed by the {@link EmbeddedElasticsearch}.
+     */
+    static List<EsCall> steps(String dir, String index) {
+        return List.of(
 //            new EsCall("GET", "", null),
-            new EsCurlCall("PUT", "/employees", loadResource(dir + "mapping.json")),
-            new EsCurlCall("POST", "/employees/_bulk?refresh=true", loadResource(dir + "employees.njson")),
-            new EsCurlCall("PUT", "/employees/_mapping", loadResource(dir + "mapping_update.json")),
-            new EsCurlCall("POST", "/employees/_bulk?refresh=true", loadResource(dir + "employees_update.njson"))
+            new EsCall("DELETE", "/" + index + "?ignore_unavailable=true", null),
+            new EsCall("PUT", "/" + index, dir + "mapping.json"),
+            new EsCall("POST", "/" + index + "/_bulk?refresh=true", dir + "employees.njson"),
+            new EsCall("PUT", "/" + index + "/_mapping", dir + "mapping_update.json"),
+            new EsCall("POST", "/" + index + "/_bulk?refresh=true", dir + "employees_update.njson")
         );
+    }
 
-        for (EsCurlCall esCurlCall : toCall) {
-            esCurlCall.makeCurlCall(elasticsearch);
+    /**
+     * Makes all the calls creating and filling the index, with the given loader ({@code http} or {@code exec}).
+     */
+    static void replay(ElasticsearchContainer elasticsearch, String dir, String index, String loader) {
+        logger.log(Level.INFO, "Running Elasticsearch migrations");
+        long start = System.nanoTime();
+        boolean overHttp = !"exec".equals(loader);
+        for (EsCall esCall : steps(dir, index)) {
+            long callStart = System.nanoTime();
+            if (overHttp) {
+                esCall.makeHttpCall(EsHttpLoader.forContainer(elasticsearch));
+            } else {
+                esCall.makeCurlCall(elasticsearch);
+            }
+            logger.log(Level.FINE, "{0} took {1} ms", new Object[]{esCall, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - callStart)});
         }
-        logger.log(Level.INFO, "Finished Elasticsearch migrations");
+        logger.log(Level.INFO, "Finished Elasticsearch migrations ({0}) in {1} ms",
+            new Object[]{overHttp ? "http" : "exec", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
     }
 
 
@@ -55,14 +135,19 @@ public interface ElasticsearchContainerHelper {
         }
     }
 
-    record EsCurlCall(String method, String endpoint, String payload) {
+    record EsCall(String method, String endpoint, String resource) {
+
+        private void makeHttpCall(EsHttpLoader loader) {
+            loader.call(this.method, this.endpoint, this.resource);
+        }
+
         private void makeCurlCall(ElasticsearchContainer elasticsearch) {
             List<String> call = new ArrayList<>(List.of(
-                "/usr/bin/curl", "-k", "--silent", "-u", "elastic:changeme", "-H", "Content-Type: application/json",
-                "-X", this.method, "https://localhost:9200" + this.endpoint));
-            if (this.payload != null && !this.payload.isEmpty()) {
+                "/usr/bin/curl", "-k", "--silent", "-u", EsHttpLoader.USERNAME + ":" + EsHttpLoader.PASSWORD, "-H", "Content-Type: application/json",
+                "-X", this.method, ElasticsearchContainerHelper.scheme(elasticsearch) + "://localhost:9200" + this.endpoint));
+            if (this.resource != null) {
                 call.add("-d");
-                call.add(this.payload);
+                call.add(loadResource(this.resource));
             }
 
             Container.ExecResult execResult = null;
@@ -75,6 +160,7 @@ public interface ElasticsearchContainerHelper {
             if (execResult.getExitCode() != 0) {
                 throw new RuntimeException("Error when calling %s: [%s] [%s]".formatted(this, execResult.getStdout(), execResult.getStderr()));
             }
+            EsHttpLoader.checkBulk(this.toString(), this.endpoint, execResult.getStdout());
         }
     }
 }
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory H2 database in MySQL mode, one per test, for the {@link BackendTier#EMBEDDED} tier.
+ * Liquibase runs a changelog once per JVM, into a template whose {@code SCRIPT} every new database replays,
+ * so each test gets freshly migrated tables of its own without going through Liquibase.
+ */
+public final class EmbeddedDatabase implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(EmbeddedDatabase.class.getName());
+
+    private static final String USERNAME = "sa";
+    private static final String PASSWORD = "";
+
+    private static final Map<String, List<String>> scripts = new ConcurrentHashMap<>();
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private final String name;
+    private final String jdbcUrl;
+
+    private EmbeddedDatabase(String name) {
+        this.name = name;
+        this.jdbcUrl = "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * A new database, in the state the changelog leaves an empty one in.
+     */
+    public static EmbeddedDatabase migrated(String changelog) {
+        List<String> script = scripts.computeIfAbsent(changelog, EmbeddedDatabase::migrateTemplate);
+        EmbeddedDatabase database = new EmbeddedDatabase("test_" + databases.incrementAndGet());
+        try (Connection connection = database.connect(); Statement statement = connection.createStatement()) {
+            for (String sql : script) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return database;
+    }
+
+    private static List<String> migrateTemplate(String changelog) {
+        long start = System.nanoTime();
+        try (EmbeddedDatabase template = new EmbeddedDatabase("template_" + databases.incrementAndGet())) {
+            DbContainerHelper.runLiquibaseMigrations(template.jdbcUrl, USERNAME, PASSWORD, changelog);
+            List<String> script = new ArrayList<>();
+            try (Connection connection = template.connect();
+                 Statement statement = connection.createStatement();
+                 ResultSet lines = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+                while (lines.next()) {
+                    script.add(lines.getString(1));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            logger.log(Level.INFO, "Embedded template of {0} migrated in {1} ms, {2} statements to replay",
+                new Object[]{changelog, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), script.size()});
+            return List.copyOf(script);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String jdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public Connection connect() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, USERNAME, PASSWORD);
+    }
+
+    /**
+     * Drops the database, it's kept in memory until then.
+     */
+    @Override
+    public void close() {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
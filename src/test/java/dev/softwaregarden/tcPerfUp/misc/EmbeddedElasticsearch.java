@@ -0,0 +1,404 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stands in for Elasticsearch on the {@link BackendTier#EMBEDDED} tier: an HTTP server in the test JVM,
+ * one per JVM, whose indices are maps of JSON documents, always refreshed. It only understands what the tests use:
+ * creating, mapping and setting (the mappings and settings are ignored), refreshing, counting and deleting an index, getting a document,
+ * {@code _bulk} with {@code index}, {@code create}, {@code update} (partial documents) and {@code delete}, and ES|QL queries shaped like
+ * {@code FROM index [| WHERE field == value] [| KEEP field, ...] [| SORT field [ASC|DESC]] [| LIMIT n]},
+ * the value being a literal or a {@code ?} parameter. Anything else is answered with an error naming it,
+ * so a test needing more fails instead of getting a wrong answer.
+ */
+public final class EmbeddedElasticsearch {
+
+    private static final Logger logger = Logger.getLogger(EmbeddedElasticsearch.class.getName());
+
+    private static final ObjectMapper json = new ObjectMapper();
+    private static final int DEFAULT_LIMIT = 500;
+    private static final Pattern WHERE = Pattern.compile("WHERE\\s+([\\w.]+)\\s*==\\s*(.+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SORT = Pattern.compile("SORT\\s+([\\w.]+)(?:\\s+(ASC|DESC))?", Pattern.CASE_INSENSITIVE);
+
+    private static EmbeddedElasticsearch instance;
+
+    private final HttpServer server;
+    private final Map<String, Map<String, ObjectNode>> indices = new ConcurrentHashMap<>();
+    private final ElasticsearchClient client;
+
+    private record Response(int status, JsonNode body) {
+    }
+
+    private EmbeddedElasticsearch(JsonpMapper mapper) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::exchange);
+        server.start();
+        RestClient restClient = RestClient.builder(new HttpHost(server.getAddress().getHostString(), server.getAddress().getPort(), "http")).build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, mapper));
+        logger.log(Level.INFO, "Elasticsearch stand-in listening on {0}", server.getAddress());
+    }
+
+    /**
+     * The stand-in of this JVM, started on first use. The mapper is that of its {@link #client()}.
+     */
+    public static synchronized EmbeddedElasticsearch instance(JsonpMapper mapper) {
+        if (instance == null) {
+            instance = new EmbeddedElasticsearch(mapper);
+        }
+        return instance;
+    }
+
+    public ElasticsearchClient client() {
+        return client;
+    }
+
+    public URI uri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Makes the calls in-process, without going through HTTP.
+     */
+    public void replay(List<ElasticsearchContainerHelper.EsCall> calls) {
+        for (ElasticsearchContainerHelper.EsCall call : calls) {
+            byte[] body = call.resource() == null ? new byte[0] : read(call.resource());
+            Response response = handle(call.method(), call.endpoint(), body);
+            if (response.status() >= 300) {
+                throw new RuntimeException("Error when calling %s %s: [%d] [%s]".formatted(call.method(), call.endpoint(), response.status(), response.body()));
+            }
+        }
+    }
+
+    /**
+     * Deletes the index and the ones named after it, like {@code index-synced}, so the stand-in doesn't grow with every test.
+     */
+    public void deleteAll(String index) {
+        indices.keySet().removeIf(name -> name.equals(index) || name.startsWith(index + "-"));
+    }
+
+    private void exchange(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String target = exchange.getRequestURI().getRawPath()
+                + (exchange.getRequestURI().getRawQuery() == null ? "" : "?" + exchange.getRequestURI().getRawQuery());
+            Response response = handle(exchange.getRequestMethod(), target, exchange.getRequestBody().readAllBytes());
+            exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(response.status(), -1);
+                return;
+            }
+            byte[] body = json.writeValueAsBytes(response.body());
+            exchange.sendResponseHeaders(response.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private Response handle(String method, String target, byte[] body) {
+        int queryAt = target.indexOf('?');
+        String path = queryAt < 0 ? target : target.substring(0, queryAt);
+        String query = queryAt < 0 ? "" : target.substring(queryAt + 1);
+        List<String> segments = new ArrayList<>(List.of(path.replaceFirst("^/", "").split("/")));
+        try {
+            if (segments.equals(List.of("_query")) && method.equals("POST")) {
+                return esql(json.readTree(body));
+            }
+            if (segments.size() == 1 && !segments.get(0).startsWith("_")) {
+                String index = segments.get(0);
+                switch (method) {
+                    case "PUT" -> {
+                        if (indices.putIfAbsent(index, Collections.synchronizedMap(new LinkedHashMap<>())) != null) {
+                            return error(400, "resource_already_exists_exception", "index [" + index + "] already exists");
+                        }
+                        return new Response(200, json.createObjectNode().put("acknowledged", true).put("shards_acknowledged", true).put("index", index));
+                    }
+                    case "DELETE" -> {
+                        if (indices.remove(index) == null && !query.contains("ignore_unavailable=true")) {
+                            return noSuchIndex(index);
+                        }
+                        return new Response(200, json.createObjectNode().put("acknowledged", true));
+                    }
+                    case "HEAD" -> {
+                        return new Response(indices.containsKey(index) ? 200 : 404, json.createObjectNode());
+                    }
+                    default -> {
+                    }
+                }
+            }
+            if (segments.size() == 2 && (segments.get(1).equals("_mapping") || segments.get(1).equals("_settings")) && method.equals("PUT")) {
+                return indices.containsKey(segments.get(0))
+                    ? new Response(200, json.createObjectNode().put("acknowledged", true))
+                    : noSuchIndex(segments.get(0));
+            }
+            if (segments.size() == 2 && segments.get(1).equals("_refresh") && method.equals("POST")) {
+                return indices.containsKey(segments.get(0)) ? new Response(200, shards(json.createObjectNode())) : noSuchIndex(segments.get(0));
+            }
+            if (segments.size() == 2 && segments.get(1).equals("_count") && (method.equals("GET") || method.equals("POST"))) {
+                Map<String, ObjectNode> documents = indices.get(segments.get(0));
+                return documents == null ? noSuchIndex(segments.get(0)) : new Response(200, shards(json.createObjectNode().put("count", documents.size())));
+            }
+            if (segments.size() == 3 && segments.get(1).equals("_doc") && method.equals("GET")) {
+                return get(segments.get(0), segments.get(2));
+            }
+            if (segments.get(segments.size() - 1).equals("_bulk") && segments.size() <= 2 && method.equals("POST")) {
+                return bulk(segments.size() == 2 ? segments.get(0) : null, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            return error(400, "parsing_exception", String.valueOf(e.getMessage()));
+        }
+        return error(400, "unsupported_operation_exception", method + " " + path + " isn't supported by the Elasticsearch stand-in");
+    }
+
+    private Response get(String index, String id) {
+        Map<String, ObjectNode> documents = indices.get(index);
+        if (documents == null) {
+            return noSuchIndex(index);
+        }
+        ObjectNode document = documents.get(id);
+        ObjectNode response = json.createObjectNode().put("_index", index).put("_id", id).put("found", document != null);
+        if (document == null) {
+            return new Response(404, response);
+        }
+        synchronized (documents) {
+            response.put("_version", 1).put("_seq_no", 0).put("_primary_term", 1).set("_source", document.deepCopy());
+        }
+        return new Response(200, response);
+    }
+
+    private static ObjectNode shards(ObjectNode response) {
+        response.putObject("_shards").put("total", 1).put("successful", 1).put("failed", 0);
+        return response;
+    }
+
+    private Response bulk(String defaultIndex, byte[] body) throws IOException {
+        ArrayNode items = json.createArrayNode();
+        boolean errors = false;
+        Iterator<String> lines = new String(body, StandardCharsets.UTF_8).lines().filter(line -> !line.isBlank()).iterator();
+        while (lines.hasNext()) {
+            JsonNode action = json.readTree(lines.next());
+            String type = action.fieldNames().next();
+            JsonNode meta = action.get(type);
+            String index = meta.hasNonNull("_index") ? meta.get("_index").asText() : defaultIndex;
+            String id = meta.hasNonNull("_id") ? meta.get("_id").asText() : UUID.randomUUID().toString();
+            Map<String, ObjectNode> documents = indices.computeIfAbsent(index, name -> Collections.synchronizedMap(new LinkedHashMap<>()));
+            int status;
+            switch (type) {
+                case "index", "create" -> {
+                    ObjectNode document = (ObjectNode) json.readTree(lines.next());
+                    status = documents.put(id, document) == null ? 201 : 200;
+                }
+                case "update" -> {
+                    JsonNode partial = json.readTree(lines.next()).get("doc");
+                    synchronized (documents) {
+                        ObjectNode document = documents.get(id);
+                        if (document != null && partial instanceof ObjectNode doc) {
+                            document.setAll(doc);
+                        }
+                        status = document == null ? 404 : 200;
+                    }
+                }
+                case "delete" -> status = documents.remove(id) == null ? 404 : 200;
+                default -> throw new IllegalArgumentException("Bulk action " + type + " isn't supported by the Elasticsearch stand-in");
+            }
+            ObjectNode item = items.addObject().putObject(type).put("_index", index).put("_id", id).put("status", status);
+            if (status == 404 && !type.equals("delete")) {
+                errors = true;
+                item.putObject("error").put("type", "document_missing_exception").put("reason", "[" + id + "]: document missing");
+            }
+        }
+        ObjectNode response = json.createObjectNode().put("took", 0).put("errors", errors);
+        response.set("items", items);
+        return new Response(200, response);
+    }
+
+    private Response esql(JsonNode request) {
+        Iterator<JsonNode> params = request.path("params").elements();
+        List<String> commands = commands(request.get("query").asText());
+        String from = commands.get(0);
+        if (!from.regionMatches(true, 0, "FROM ", 0, 5)) {
+            throw new IllegalArgumentException("Expecting FROM first, but found " + from);
+        }
+        String index = from.substring(5).trim();
+        Map<String, ObjectNode> documents = indices.get(index);
+        if (documents == null) {
+            return error(400, "verification_exception", "Unknown index [" + index + "]");
+        }
+        List<ObjectNode> rows;
+        synchronized (documents) {
+            rows = new ArrayList<>(documents.values());
+        }
+        List<String> columns = null;
+        int limit = DEFAULT_LIMIT;
+        for (String command : commands.subList(1, commands.size())) {
+            Matcher where = WHERE.matcher(command);
+            Matcher sort = SORT.matcher(command);
+            if (where.matches()) {
+                String field = where.group(1);
+                JsonNode value = where.group(2).trim().equals("?") ? params.next() : literal(where.group(2).trim());
+                rows.removeIf(row -> !row.hasNonNull(field) || !row.get(field).asText().equals(value.asText()));
+            } else if (command.regionMatches(true, 0, "KEEP ", 0, 5)) {
+                columns = List.of(command.substring(5).trim().split("\\s*,\\s*"));
+            } else if (sort.matches()) {
+                Comparator<ObjectNode> byField = Comparator.comparing(row -> row.get(sort.group(1)), EmbeddedElasticsearch::compare);
+                rows.sort("DESC".equalsIgnoreCase(sort.group(2)) ? byField.reversed() : byField);
+            } else if (command.regionMatches(true, 0, "LIMIT ", 0, 6)) {
+                limit = Integer.parseInt(command.substring(6).trim());
+            } else {
+                throw new IllegalArgumentException("ES|QL command " + command + " isn't supported by the Elasticsearch stand-in");
+            }
+        }
+        rows = rows.subList(0, Math.min(limit, rows.size()));
+        if (columns == null) {
+            Set<String> fields = new TreeSet<>();
+            rows.forEach(row -> row.fieldNames().forEachRemaining(fields::add));
+            columns = List.copyOf(fields);
+        }
+        return new Response(200, esqlResult(columns, rows, request.path("columnar").asBoolean(false)));
+    }
+
+    private static ObjectNode esqlResult(List<String> columns, List<ObjectNode> rows, boolean columnar) {
+        ObjectNode result = json.createObjectNode();
+        ArrayNode columnsNode = result.putArray("columns");
+        for (String column : columns) {
+            JsonNode first = rows.stream().map(row -> row.get(column)).filter(value -> value != null && !value.isNull()).findFirst().orElse(null);
+            columnsNode.addObject().put("name", column).put("type", first == null ? "null"
+                : first.isIntegralNumber() ? "long" : first.isNumber() ? "double" : first.isBoolean() ? "boolean" : "keyword");
+        }
+        ArrayNode values = result.putArray("values");
+        if (columnar) {
+            for (String column : columns) {
+                ArrayNode columnValues = values.addArray();
+                rows.forEach(row -> columnValues.add(row.path(column).isMissingNode() ? json.nullNode() : row.get(column)));
+            }
+        } else {
+            for (ObjectNode row : rows) {
+                ArrayNode rowValues = values.addArray();
+                columns.forEach(column -> rowValues.add(row.path(column).isMissingNode() ? json.nullNode() : row.get(column)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The commands of the query, split at the pipes which aren't in a string.
+     */
+    private static List<String> commands(String query) {
+        List<String> commands = new ArrayList<>();
+        StringBuilder command = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"' && (i == 0 || query.charAt(i - 1) != '\\')) {
+                inString = !inString;
+            }
+            if (c == '|' && !inString) {
+                commands.add(command.toString().trim());
+                command.setLength(0);
+            } else {
+                command.append(c);
+            }
+        }
+        commands.add(command.toString().trim());
+        return commands;
+    }
+
+    private static JsonNode literal(String literal) {
+        try {
+            return json.readTree(literal);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a literal: " + literal, e);
+        }
+    }
+
+    // nulls are greater than anything, like in ES|QL
+    private static int compare(JsonNode left, JsonNode right) {
+        boolean leftNull = left == null || left.isNull();
+        boolean rightNull = right == null || right.isNull();
+        if (leftNull || rightNull) {
+            return Boolean.compare(leftNull, rightNull);
+        }
+        if (left.isNumber() && right.isNumber()) {
+            return Double.compare(left.asDouble(), right.asDouble());
+        }
+        return left.asText().compareTo(right.asText());
+    }
+
+    private static Response noSuchIndex(String index) {
+        return error(404, "index_not_found_exception", "no such index [" + index + "]");
+    }
+
+    private static Response error(int status, String type, String reason) {
+        ObjectNode body = json.createObjectNode();
+        body.putObject("error").put("type", type).put("reason", reason);
+        body.put("status", status);
+        return new Response(status, body);
+    }
+
+    private static byte[] read(String resource) {
+        try (InputStream stream = EmbeddedElasticsearch.class.getResourceAsStream(resource)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("No resource " + resource);
+            }
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
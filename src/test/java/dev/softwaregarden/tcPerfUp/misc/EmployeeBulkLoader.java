@@ -0,0 +1,192 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import dev.softwaregarden.tcPerfUp.misc.EmployeeGenerator.Employee;
+import dev.softwaregarden.tcPerfUp.sync.ConnectionFactory;
+import org.testcontainers.containers.JdbcDatabaseContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Loads lots of {@link EmployeeGenerator generated} employees, consuming the stream as it goes, so only the batches
+ * in flight are ever in memory. MySQL gets batched inserts, which Connector/J rewrites into multi-row ones;
+ * {@code LOAD DATA LOCAL INFILE} would need {@code local_infile} turned on in the server first.
+ * Elasticsearch gets chunked {@code _bulk} requests, a few at a time, with refreshes off until the load is over.
+ */
+public final class EmployeeBulkLoader {
+
+    private static final Logger logger = Logger.getLogger(EmployeeBulkLoader.class.getName());
+
+    public static final int MYSQL_BATCH_SIZE = 5_000;
+    public static final int ELASTICSEARCH_CHUNK_SIZE = 5_000;
+    public static final int ELASTICSEARCH_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private EmployeeBulkLoader() {
+    }
+
+    public record Report(String store, long rows, long nanos) {
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "%s: %,d rows in %,d ms, %,.0f rows/s".formatted(store, rows, TimeUnit.NANOSECONDS.toMillis(nanos), rowsPerSecond());
+        }
+    }
+
+    /**
+     * Inserts the employees into the {@code employees} table of the given database, committing every batch.
+     */
+    public static Report intoMySQL(JdbcDatabaseContainer<?> dbContainer, String database, Stream<Employee> employees) {
+        String url = withParameter(DbContainerHelper.jdbcUrl(dbContainer, database), "rewriteBatchedStatements=true");
+        return intoDatabase(() -> DriverManager.getConnection(url, dbContainer.getUsername(), dbContainer.getPassword()), database, employees);
+    }
+
+    /**
+     * Inserts the employees into the {@code employees} table of the database the connections go to, committing every batch.
+     */
+    public static Report intoDatabase(ConnectionFactory connections, String database, Stream<Employee> employees) {
+        long start = System.nanoTime();
+        long rows = 0;
+        try (Connection connection = connections.open();
+             PreparedStatement insert = connection.prepareStatement(
+                 "INSERT INTO employees (id, first_name, middle_name, last_name) VALUES (?, ?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            for (Iterator<Employee> iterator = employees.iterator(); iterator.hasNext(); ) {
+                Employee employee = iterator.next();
+                insert.setInt(1, employee.id());
+                insert.setString(2, employee.firstName());
+                if (employee.middleName() == null) {
+                    insert.setNull(3, Types.VARCHAR);
+                } else {
+                    insert.setString(3, employee.middleName());
+                }
+                insert.setString(4, employee.lastName());
+                insert.addBatch();
+                if (++rows % MYSQL_BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return reported(new Report("database " + database, rows, System.nanoTime() - start));
+    }
+
+    /**
+     * Indexes the employees into the given, existing index, and refreshes it once they're all in.
+     */
+    public static Report intoElasticsearch(ElasticsearchContainer elasticsearch, String index, Stream<Employee> employees) {
+        return intoElasticsearch(EsHttpLoader.forContainer(elasticsearch), index, employees);
+    }
+
+    /**
+     * Like {@link #intoElasticsearch(ElasticsearchContainer, String, Stream)}, through the given loader,
+     * e.g. one of the {@link EmbeddedElasticsearch} stand-in.
+     */
+    public static Report intoElasticsearch(EsHttpLoader loader, String index, Stream<Employee> employees) {
+        long start = System.nanoTime();
+        loader.send("PUT", "/" + index + "/_settings", EsHttpLoader.json("""
+            {"index": {"refresh_interval": "-1", "number_of_replicas": 0}}"""), "application/json");
+        long rows = 0;
+        Semaphore inFlight = new Semaphore(ELASTICSEARCH_PARALLELISM);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            int inChunk = 0;
+            for (Iterator<Employee> iterator = employees.iterator(); iterator.hasNext() && failure.get() == null; ) {
+                writeBulkLines(chunk, iterator.next());
+                rows++;
+                if (++inChunk == ELASTICSEARCH_CHUNK_SIZE || !iterator.hasNext()) {
+                    byte[] body = chunk.toByteArray();
+                    chunk.reset();
+                    inChunk = 0;
+                    inFlight.acquire();
+                    senders.execute(() -> {
+                        try {
+                            sendBulk(loader, index, body);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            loader.send("PUT", "/" + index + "/_settings", EsHttpLoader.json("""
+                {"index": {"refresh_interval": null}}"""), "application/json");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        loader.send("POST", "/" + index + "/_refresh", null, "application/json");
+        return reported(new Report("Elasticsearch " + index, rows, System.nanoTime() - start));
+    }
+
+    private static void sendBulk(EsHttpLoader loader, String index, byte[] body) {
+        // only the failed items come back, which the loader fails on
+        loader.send("POST", "/" + index + "/_bulk?filter_path=errors,items.*._id,items.*.error",
+            EsHttpLoader.bytes(body), "application/x-ndjson");
+    }
+
+    private static void writeBulkLines(ByteArrayOutputStream chunk, Employee employee) {
+        String lines = "{\"index\":{\"_id\":\"" + employee.id() + "\"}}\n"
+            + "{\"first_name\":" + quoted(employee.firstName())
+            + (employee.middleName() == null ? "" : ",\"middle_name\":" + quoted(employee.middleName()))
+            + ",\"last_name\":" + quoted(employee.lastName()) + "}\n";
+        chunk.writeBytes(lines.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String quoted(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String withParameter(String url, String parameter) {
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + parameter;
+    }
+
+    private static Report reported(Report report) {
+        logger.log(Level.INFO, "Loaded {0}", report);
+        return report;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Makes up as many {@code employees} as needed, the same ones for the same seed. Every employee is derived
+ * from the seed and its id alone, so the rows are produced one by one as they're consumed, never held in memory,
+ * and any range of ids can be generated on its own.
+ * The made-up names never include "Doe", so the fixtures' John Doe stays the only one.
+ */
+public final class EmployeeGenerator {
+
+    public static final long DEFAULT_SEED = 20240424L;
+
+    private static final String[] FIRST_NAMES = {
+        "Ada", "Alan", "Alice", "Barbara", "Bjarne", "Brian", "Carol", "Charles", "Dennis", "Donald",
+        "Edsger", "Frances", "Grace", "Guido", "Hedy", "James", "Joan", "Ken", "Linus", "Margaret",
+        "Martin", "Mary", "Niklaus", "Radia", "Richard", "Robin", "Sophie", "Susan", "Tim", "Tony"
+    };
+    private static final String[] MIDDLE_NAMES = {
+        "Anne", "Beatrice", "Claude", "Edgar", "Elisabeth", "Francis", "George", "Henry", "Isabel", "Jean",
+        "Louise", "Marie", "Meredith", "Paul", "Rose", "Thomas"
+    };
+    private static final String[] LAST_NAMES = {
+        "Allen", "Backus", "Berners-Lee", "Cerf", "Dijkstra", "Goldberg", "Gosling", "Hamilton", "Hopper", "Kay",
+        "Kernighan", "Knuth", "Lamarr", "Liskov", "Lovelace", "McCarthy", "Milner", "Perlman", "Ritchie", "Smith",
+        "Stallman", "Stroustrup", "Thompson", "Torvalds", "Turing", "Wilson", "Wirth", "Wozniak"
+    };
+    private static final int NO_MIDDLE_NAME_PERCENT = 30;
+
+    public record Employee(int id, String firstName, String middleName, String lastName) {
+    }
+
+    private final long seed;
+
+    public EmployeeGenerator() {
+        this(DEFAULT_SEED);
+    }
+
+    public EmployeeGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public Employee employee(int id) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + id);
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String middleName = random.nextInt(100) < NO_MIDDLE_NAME_PERCENT ? null : MIDDLE_NAMES[random.nextInt(MIDDLE_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return new Employee(id, firstName, middleName, lastName);
+    }
+
+    /**
+     * {@code count} employees with consecutive ids, starting at {@code firstId}, generated lazily.
+     */
+    public Stream<Employee> employees(int firstId, int count) {
+        return IntStream.range(firstId, Math.addExact(firstId, count)).mapToObj(this::employee);
+    }
+}
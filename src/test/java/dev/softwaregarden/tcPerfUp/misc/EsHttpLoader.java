@@ -0,0 +1,239 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Talks to Elasticsearch through its mapped port, from the JVM running the tests. One {@link HttpClient} is kept
+ * per container, so its keep-alive connection (and the TLS handshake done for it) is reused by all the calls,
+ * and one for the {@link EmbeddedElasticsearch} stand-in, which is there for the whole JVM.
+ * Payloads are streamed from the classpath, so they're neither turned into {@code String}s nor limited by argv size.
+ */
+public final class EsHttpLoader implements AutoCloseable {
+
+    public static final String USERNAME = "elastic";
+    public static final String PASSWORD = System.getenv().getOrDefault("ESPSWD", "changeme");
+
+    // how many of the failed items of a _bulk request make it into the exception
+    private static final int BULK_ERRORS_REPORTED = 5;
+
+    private static final ObjectMapper json = new ObjectMapper();
+
+    private static final Map<String, EsHttpLoader> loaders = new ConcurrentHashMap<>();
+
+    private final String key;
+    private final HttpClient client;
+    private final URI baseUri;
+    private final String authorization;
+
+    private EsHttpLoader(ElasticsearchContainer elasticsearch) {
+        this.key = elasticsearch.getContainerId();
+        HttpClient.Builder builder = newClient();
+        boolean secured = ElasticsearchContainerHelper.isSecured(elasticsearch);
+        if (secured) {
+            builder.sslContext(elasticsearch.createSslContextFromCa());
+        }
+        this.client = builder.build();
+        this.baseUri = URI.create(ElasticsearchContainerHelper.scheme(elasticsearch) + "://" + elasticsearch.getHttpHostAddress());
+        this.authorization = secured
+            ? "Basic " + Base64.getEncoder().encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8))
+            : null;
+    }
+
+    private EsHttpLoader(URI baseUri) {
+        this.key = baseUri.toString();
+        this.client = newClient().build();
+        this.baseUri = baseUri;
+        this.authorization = null;
+    }
+
+    private static HttpClient.Builder newClient() {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10));
+    }
+
+    public static EsHttpLoader forContainer(ElasticsearchContainer elasticsearch) {
+        return loaders.computeIfAbsent(elasticsearch.getContainerId(), id -> {
+            EsHttpLoader loader = new EsHttpLoader(elasticsearch);
+            ContainerRegistry.closeOnStop(elasticsearch, loader);
+            return loader;
+        });
+    }
+
+    /**
+     * A loader talking to the stand-in over HTTP, just like to a container, e.g. to load it the same way.
+     */
+    public static EsHttpLoader forStandIn(EmbeddedElasticsearch standIn) {
+        return loaders.computeIfAbsent(standIn.uri().toString(), uri -> new EsHttpLoader(standIn.uri()));
+    }
+
+    /**
+     * Sends the request, streaming the body from the given classpath resource, if any.
+     */
+    public void call(String method, String endpoint, String resource) {
+        send(method, endpoint, resource == null ? null : () -> open(resource), contentType(resource));
+    }
+
+    /**
+     * Sends the request, streaming the body from the supplier, if any. The supplier may be asked more than once,
+     * if the request has to be retried. A {@code _bulk} request fails if any of its items did.
+     */
+    public void send(String method, String endpoint, Supplier<InputStream> body, String contentType) {
+        HttpResponse<String> response = exchange(method, endpoint, body, contentType);
+        if (response.statusCode() >= 300) {
+            throw failure(method, endpoint, response);
+        }
+        checkBulk(method + " " + endpoint, endpoint, response.body());
+    }
+
+    /**
+     * Like {@link #send(String, String, Supplier, String)}, but returns {@code false} instead of failing
+     * when the target of the call doesn't exist.
+     */
+    public boolean sendIfFound(String method, String endpoint, Supplier<InputStream> body, String contentType) {
+        HttpResponse<String> response = exchange(method, endpoint, body, contentType);
+        if (response.statusCode() == 404) {
+            return false;
+        }
+        if (response.statusCode() >= 300) {
+            throw failure(method, endpoint, response);
+        }
+        checkBulk(method + " " + endpoint, endpoint, response.body());
+        return true;
+    }
+
+    /**
+     * Like {@link #send(String, String, Supplier, String)}, but returns the body of the response.
+     */
+    public String sendAndRead(String method, String endpoint, Supplier<InputStream> body, String contentType) {
+        HttpResponse<String> response = exchange(method, endpoint, body, contentType, true);
+        if (response.statusCode() >= 300) {
+            throw failure(method, endpoint, response);
+        }
+        checkBulk(method + " " + endpoint, endpoint, response.body());
+        return response.body();
+    }
+
+    /**
+     * A {@code _bulk} request succeeds as a whole even if some of its items fail, only the {@code errors} flag
+     * of the response tells, so this fails with the first few item errors then. Other responses aren't looked at.
+     */
+    static void checkBulk(String call, String endpoint, String response) {
+        if (!isBulk(endpoint)) {
+            return;
+        }
+        JsonNode result;
+        try {
+            result = json.readTree(response);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unreadable response to %s: [%s]".formatted(call, response), e);
+        }
+        if (!result.path("errors").asBoolean()) {
+            return;
+        }
+        List<String> errors = new ArrayList<>();
+        for (JsonNode item : result.path("items")) {
+            for (JsonNode action : item) {
+                if (action.has("error") && errors.size() < BULK_ERRORS_REPORTED) {
+                    errors.add(action.path("_id").asText() + ": " + action.get("error"));
+                }
+            }
+        }
+        throw new RuntimeException("Error when calling %s, some items failed, e.g. %s".formatted(call, errors));
+    }
+
+    private static boolean isBulk(String endpoint) {
+        int query = endpoint.indexOf('?');
+        String path = query < 0 ? endpoint : endpoint.substring(0, query);
+        return path.equals("/_bulk") || path.endsWith("/_bulk");
+    }
+
+    public static Supplier<InputStream> json(String json) {
+        return bytes(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Supplier<InputStream> bytes(byte[] bytes) {
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+    private HttpResponse<String> exchange(String method, String endpoint, Supplier<InputStream> body, String contentType) {
+        return exchange(method, endpoint, body, contentType, isBulk(endpoint));
+    }
+
+    private HttpResponse<String> exchange(String method, String endpoint, Supplier<InputStream> body, String contentType, boolean readBody) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(endpoint))
+            .header("Content-Type", contentType)
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofInputStream(body));
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        try {
+            return client.send(request.build(), responseInfo -> responseInfo.statusCode() < 300 && !readBody
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RuntimeException failure(String method, String endpoint, HttpResponse<String> response) {
+        return new RuntimeException("Error when calling %s %s: [%d] [%s]".formatted(method, endpoint, response.statusCode(), response.body()));
+    }
+
+    @Override
+    public void close() {
+        loaders.remove(key, this);
+        client.close();
+    }
+
+    private static InputStream open(String resource) {
+        InputStream stream = EsHttpLoader.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new UncheckedIOException(new FileNotFoundException(resource));
+        }
+        return stream;
+    }
+
+    private static String contentType(String resource) {
+        return resource != null && resource.endsWith(".njson") ? "application/x-ndjson" : "application/json";
+    }
+}
@@ -17,11 +17,15 @@
 
 package dev.softwaregarden.tcPerfUp.misc;
 
+import java.time.Duration;
 
+/**
+ * Sleeps on the {@link VirtualClock}, so by default no wall time is spent at all.
+ */
 public interface FakeSleeper {
     static void sleep(long duration) {
         try {
-            Thread.sleep(duration);
+            VirtualClock.get().sleep(Duration.ofMillis(duration));
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps up to {@code maxIdle} connections open for reuse. The connections handed out go back to the pool when closed,
+ * after rolling back whatever they left uncommitted.
+ */
+final class JdbcConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(JdbcConnectionPool.class.getName());
+
+    @FunctionalInterface
+    interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    private final Opener opener;
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger opened;
+    private final AtomicInteger borrowed;
+    private volatile boolean closed;
+
+    JdbcConnectionPool(Opener opener, int maxIdle, AtomicInteger opened, AtomicInteger borrowed) {
+        this.opener = opener;
+        this.idle = new LinkedBlockingQueue<>(maxIdle);
+        this.opened = opened;
+        this.borrowed = borrowed;
+    }
+
+    Connection borrow() throws SQLException {
+        borrowed.incrementAndGet();
+        Connection physical;
+        do {
+            physical = idle.poll();
+        } while (physical != null && physical.isClosed());
+        if (physical == null) {
+            physical = opener.open();
+            opened.incrementAndGet();
+        }
+        return handOut(physical);
+    }
+
+    private Connection handOut(Connection physical) {
+        boolean[] returned = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!returned[0]) {
+                            returned[0] = true;
+                            giveBack(physical);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return returned[0] || physical.isClosed();
+                    }
+                    default -> {
+                        if (returned[0]) {
+                            throw new SQLException("Connection has already been returned to the pool");
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }
+            });
+    }
+
+    private void giveBack(Connection physical) throws SQLException {
+        if (!physical.getAutoCommit()) {
+            physical.rollback();
+            physical.setAutoCommit(true);
+        }
+        if (closed || !idle.offer(physical)) {
+            physical.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Could not close pooled connection", e);
+            }
+        }
+    }
+}
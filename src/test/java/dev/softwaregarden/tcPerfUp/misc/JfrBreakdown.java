@@ -0,0 +1,98 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Sums up the {@link PhaseEvents} of a recording per test class and phase, next to the time JUnit spent on each class
+ * ({@code total}), prints it and writes it as JSON:
+ * <pre>
+ *     java -cp target/test-classes dev.softwaregarden.tcPerfUp.misc.JfrBreakdown [target/tests.jfr [target/jfr-breakdown.json]]
+ * </pre>
+ * The phases of a class may add up to more than its total, as containers start and get prepared side by side.
+ */
+public final class JfrBreakdown {
+
+    private static final String JUNIT_EXECUTION_EVENT = "org.junit.TestExecution";
+    private static final Pattern TEST_CLASS = Pattern.compile("\\[class:([^\\]]+)]$");
+    private static final String TOTAL = "total";
+
+    private JfrBreakdown() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path recording = Path.of(args.length > 0 ? args[0] : "target/tests.jfr");
+        Path json = Path.of(args.length > 1 ? args[1] : "target/jfr-breakdown.json");
+
+        Map<String, Map<String, Long>> breakdown = breakdown(recording);
+        breakdown.forEach((testClass, phases) -> System.out.println(testClass + phases.entrySet().stream()
+            .map(phase -> "%s %d ms".formatted(phase.getKey(), phase.getValue()))
+            .collect(Collectors.joining(", ", ": ", ""))));
+        Files.writeString(json, toJson(breakdown));
+        System.out.println("Written to " + json);
+    }
+
+    /**
+     * Milliseconds per phase per test class; events emitted outside any test class (e.g. warm-up) are under "".
+     */
+    static Map<String, Map<String, Long>> breakdown(Path recording) throws IOException {
+        Map<String, Map<String, Long>> breakdown = new TreeMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String type = event.getEventType().getName();
+                String testClass;
+                String phase;
+                if (type.startsWith(PhaseEvents.PREFIX)) {
+                    testClass = event.getString("testClass");
+                    phase = type.substring(PhaseEvents.PREFIX.length());
+                } else if (type.equals(JUNIT_EXECUTION_EVENT)) {
+                    Matcher matcher = TEST_CLASS.matcher(String.valueOf(event.getString("uniqueId")));
+                    if (!matcher.find()) {
+                        continue;
+                    }
+                    testClass = matcher.group(1);
+                    phase = TOTAL;
+                } else {
+                    continue;
+                }
+                breakdown.computeIfAbsent(testClass == null ? "" : testClass, c -> new TreeMap<>())
+                    .merge(phase, event.getDuration().toMillis(), Long::sum);
+            }
+        }
+        return breakdown;
+    }
+
+    private static String toJson(Map<String, Map<String, Long>> breakdown) {
+        return breakdown.entrySet().stream()
+            .map(testClass -> "  \"%s\": {%s}".formatted(testClass.getKey(), testClass.getValue().entrySet().stream()
+                .map(phase -> "\"%s\": %d".formatted(phase.getKey(), phase.getValue()))
+                .collect(Collectors.joining(", "))))
+            .collect(Collectors.joining(",\n", "{\n", "\n}\n"));
+    }
+}
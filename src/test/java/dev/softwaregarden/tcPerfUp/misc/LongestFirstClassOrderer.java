@@ -0,0 +1,39 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.jupiter.api.ClassDescriptor;
+import org.junit.jupiter.api.ClassOrderer;
+import org.junit.jupiter.api.ClassOrdererContext;
+
+import java.util.Comparator;
+
+/**
+ * Puts the test classes which took the longest according to the {@link TestDurationHistory} first,
+ * so that running side by side they don't leave one long class to finish alone at the end.
+ * Classes without history count as average ones; ties are broken by name, to keep the order stable.
+ */
+public class LongestFirstClassOrderer implements ClassOrderer {
+
+    @Override
+    public void orderClasses(ClassOrdererContext context) {
+        TestDurationHistory history = TestDurationHistory.load();
+        context.getClassDescriptors().sort(
+            Comparator.comparingLong((ClassDescriptor descriptor) -> history.estimate(descriptor.getTestClass().getName())).reversed()
+                .thenComparing(descriptor -> descriptor.getTestClass().getName()));
+    }
+}
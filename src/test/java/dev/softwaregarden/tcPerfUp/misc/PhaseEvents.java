@@ -0,0 +1,131 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.function.Supplier;
+
+/**
+ * JFR events for the phases of an integration test, to be recorded next to the ones of {@code junit-platform-jfr}
+ * (e.g. {@code ./mvnw -Pjfr test}) and summed up per class and phase by {@link JfrBreakdown}.
+ * Each event is attributed to the test class set with {@link #runFor(String, Runnable)} on the thread emitting it.
+ */
+public final class PhaseEvents {
+
+    public static final String PREFIX = "dev.softwaregarden.tcPerfUp.";
+
+    private static final ThreadLocal<String> currentTestClass = ThreadLocal.withInitial(() -> "");
+
+    private PhaseEvents() {
+    }
+
+    public static void runFor(String testClass, Runnable action) {
+        String previous = currentTestClass.get();
+        currentTestClass.set(testClass);
+        try {
+            action.run();
+        } finally {
+            currentTestClass.set(previous);
+        }
+    }
+
+    public static <T> T record(PhaseEvent event, Supplier<T> action) {
+        event.begin();
+        try {
+            return action.get();
+        } finally {
+            event.commit();
+        }
+    }
+
+    public static void record(PhaseEvent event, Runnable action) {
+        record(event, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Category({"Testcontainers Performance Up"})
+    public abstract static class PhaseEvent extends Event {
+        @Label("Test Class")
+        String testClass = currentTestClass.get();
+    }
+
+    @Name(PREFIX + "ContainerStart")
+    @Label("Container Start")
+    @Description("Starting a container, including its dependencies and the wait until it's ready")
+    public static class ContainerStart extends PhaseEvent {
+        @Label("Key")
+        String key;
+        @Label("Container Type")
+        String type;
+
+        public ContainerStart(String testClass, String key, String type) {
+            this.testClass = testClass;
+            this.key = key;
+            this.type = type;
+        }
+    }
+
+    @Name(PREFIX + "Migration")
+    @Label("Database Migration")
+    @Description("Migrating a database with Liquibase, or resetting it from its snapshot")
+    public static class Migration extends PhaseEvent {
+        @Label("Database")
+        String database;
+        @Label("Action")
+        String action;
+
+        public Migration(String database, String action) {
+            this.database = database;
+            this.action = action;
+        }
+    }
+
+    @Name(PREFIX + "DataPrep")
+    @Label("Elasticsearch Data Preparation")
+    @Description("Loading the Elasticsearch fixtures, or resetting the index from its template")
+    public static class DataPrep extends PhaseEvent {
+        @Label("Index")
+        String index;
+        @Label("Action")
+        String action;
+
+        public DataPrep(String index, String action) {
+            this.index = index;
+            this.action = action;
+        }
+    }
+
+    @Name(PREFIX + "TestBody")
+    @Label("Test Body")
+    @Description("The test method itself, without the set up and tear down")
+    public static class TestBody extends PhaseEvent {
+        @Label("Test Method")
+        String testMethod;
+
+        public TestBody(String testClass, String testMethod) {
+            this.testClass = testClass;
+            this.testMethod = testMethod;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Image;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Images with the migrations and fixtures already applied, so that a container starting from one skips
+ * initialising MySQL, running Liquibase and loading Elasticsearch data from scratch.
+ * The tag holds a hash of the base image and of the resources applied onto it, e.g. {@code tc-perf-up/mysql:8.3.0-1a2b3c4d5e6f},
+ * so changing a changelog or a fixture simply leads to another image, which is baked (committed) from the first container
+ * seeded the old way. Images of the same repository with other tags are removed then.
+ */
+public final class PrebakedImages {
+
+    private static final Logger logger = Logger.getLogger(PrebakedImages.class.getName());
+
+    public static final boolean ENABLED = Boolean.getBoolean("tcPerfUp.prebaked");
+
+    /**
+     * The MySQL image declares {@code /var/lib/mysql} a volume, and volumes are left out of a commit,
+     * so the data has to live elsewhere to be baked in.
+     */
+    public static final String MYSQL_DATADIR = "/var/lib/mysql-prebaked";
+
+    private static final String REPOSITORY_PREFIX = "tc-perf-up/";
+
+    // to be bumped whenever the way the resources are applied changes, but the resources themselves don't
+    private static final String RECIPE_VERSION = "2";
+
+    private static final Map<String, String> hashes = new ConcurrentHashMap<>();
+    private static final Set<String> baked = ConcurrentHashMap.newKeySet();
+
+    private PrebakedImages() {
+    }
+
+    /**
+     * The pre-baked counterpart of {@code baseImage} with the given classpath directories applied.
+     * The version is kept in front of the hash, since e.g. {@code ElasticsearchContainer} configures itself by it.
+     * The {@link ContainerProfile} counts too, since a commit keeps the environment and the command of the container.
+     */
+    public static DockerImageName imageFor(String baseImage, ContainerProfile profile, String... resourceDirs) {
+        DockerImageName base = DockerImageName.parse(baseImage);
+        String name = base.getRepository().substring(base.getRepository().lastIndexOf('/') + 1);
+        return DockerImageName.parse(REPOSITORY_PREFIX + name)
+            .withTag(base.getVersionPart() + "-" + hashes.computeIfAbsent(baseImage + profile.variant() + String.join(",", resourceDirs),
+                key -> hash(baseImage + '\n' + profile.variant(), resourceDirs)))
+            .asCompatibleSubstituteFor(base.getUnversionedPart());
+    }
+
+    /**
+     * The pre-baked image if it's there already, {@code baseImage} otherwise.
+     */
+    public static DockerImageName resolve(String baseImage, ContainerProfile profile, String... resourceDirs) {
+        DockerImageName prebaked = imageFor(baseImage, profile, resourceDirs);
+        if (exists(prebaked)) {
+            logger.log(Level.INFO, "Using pre-baked image {0}", prebaked.asCanonicalNameString());
+            return prebaked;
+        }
+        return DockerImageName.parse(baseImage);
+    }
+
+    public static boolean exists(DockerImageName image) {
+        try {
+            DockerClientFactory.instance().client().inspectImageCmd(image.asCanonicalNameString()).exec();
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Commits the seeded container as {@code image}, unless it already runs off it or the image is there already,
+     * and then removes the stale tags of that image. The container keeps serving the tests, so it isn't stopped:
+     * MySQL gets its redo log flushed and written on every commit while the image is taken instead, see {@link #durably}.
+     */
+    public static void bake(GenericContainer<?> container, DockerImageName image) {
+        String tag = image.asCanonicalNameString();
+        if (DockerImageName.parse(container.getDockerImageName()).equals(image) || !baked.add(tag) || exists(image)) {
+            return;
+        }
+        long start = System.nanoTime();
+        DockerClient client = DockerClientFactory.instance().client();
+        Runnable commit = () -> client.commitCmd(container.getContainerId())
+            .withRepository(image.getRepository())
+            .withTag(image.getVersionPart())
+            // the label is inherited from the container, and Ryuk would remove the image along with it at the end of the session
+            .withLabels(Map.of(DockerClientFactory.TESTCONTAINERS_SESSION_ID_LABEL, "prebaked"))
+            .exec();
+        if (container instanceof MySQLContainer<?> mySQL) {
+            durably(mySQL, commit);
+        } else {
+            commit.run();
+        }
+        logger.log(Level.INFO, "Baked {0} in {1} ms", new Object[]{tag, (System.nanoTime() - start) / 1_000_000});
+        removeStale(client, image);
+    }
+
+    /**
+     * The fast profile runs MySQL with {@code innodb-flush-log-at-trx-commit=0}, so the last second of commits may
+     * only be in memory when the image is taken. Flushing the tables and the redo log with the flushing on every commit
+     * makes the committed data what InnoDB recovers to when a container starts off the image; the setting is put back after.
+     * As root, like in {@link DbContainerHelper}, since the container's user may not change global variables.
+     */
+    private static void durably(MySQLContainer<?> mySQL, Runnable commit) {
+        try (Connection connection = DriverManager.getConnection(mySQL.getJdbcUrl(), "root", mySQL.getPassword());
+             Statement statement = connection.createStatement()) {
+            String flushLog;
+            try (ResultSet resultSet = statement.executeQuery("SELECT @@GLOBAL.innodb_flush_log_at_trx_commit")) {
+                resultSet.next();
+                flushLog = resultSet.getString(1);
+            }
+            statement.execute("SET GLOBAL innodb_flush_log_at_trx_commit = 1");
+            try {
+                statement.execute("FLUSH TABLES");
+                statement.execute("FLUSH ENGINE LOGS");
+                commit.run();
+            } finally {
+                statement.execute("SET GLOBAL innodb_flush_log_at_trx_commit = " + flushLog);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void removeStale(DockerClient client, DockerImageName current) {
+        List<Image> images = client.listImagesCmd().withImageNameFilter(current.getRepository()).exec();
+        images.stream()
+            .filter(image -> image.getRepoTags() != null)
+            .flatMap(image -> Stream.of(image.getRepoTags()))
+            .filter(tag -> tag.startsWith(current.getRepository() + ":"))
+            .filter(tag -> !tag.equals(current.asCanonicalNameString()))
+            .forEach(tag -> {
+                try {
+                    client.removeImageCmd(tag).exec();
+                    logger.log(Level.INFO, "Removed stale pre-baked image {0}", tag);
+                } catch (DockerException e) {
+                    logger.log(Level.WARNING, "Could not remove stale pre-baked image " + tag, e);
+                }
+            });
+    }
+
+    private static String hash(String baseImage, String... resourceDirs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((baseImage + '\n' + RECIPE_VERSION + '\n').getBytes(StandardCharsets.UTF_8));
+            for (String resourceDir : resourceDirs) {
+                hashDirectory(digest, resourceDir.startsWith("/") ? resourceDir.substring(1) : resourceDir);
+            }
+            return HexFormat.of().formatHex(digest.digest()).substring(0, 12);
+        } catch (NoSuchAlgorithmException | IOException | URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // synchronized, so that no two threads open the file system of the same jar at once
+    private static synchronized void hashDirectory(MessageDigest digest, String resourceDir) throws IOException, URISyntaxException {
+        URL url = PrebakedImages.class.getClassLoader().getResource(resourceDir);
+        if (url == null) {
+            throw new IllegalArgumentException("No such resource directory: " + resourceDir);
+        }
+        URI uri = url.toURI();
+        try {
+            hashTree(digest, Path.of(uri));
+        } catch (FileSystemNotFoundException e) {
+            // inside a jar, whose file system is open only for the walk
+            try (FileSystem jar = FileSystems.newFileSystem(uri, Map.of())) {
+                hashTree(digest, jar.provider().getPath(uri));
+            }
+        }
+    }
+
+    private static void hashTree(MessageDigest digest, Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().toList()) {
+                digest.update(root.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(path));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Records the phases of concurrently running startup chains (e.g. "mysql": start, migrate),
+ * to tell which chain was the critical path and how much running them side by side saved.
+ */
+public final class StartupTimeline {
+
+    private final long origin = System.nanoTime();
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+
+    public <T> T time(String chain, String phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            phases.add(new Phase(chain, phase, start - origin, System.nanoTime() - origin));
+        }
+    }
+
+    public void time(String chain, String phase, Runnable action) {
+        time(chain, phase, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * E.g. {@code critical path: elasticsearch [start 9012 ms, data 301 ms] 9313 ms; also: mysql [...] 7200 ms;
+     * wall 9315 ms, sequential would've been 16513 ms}.
+     */
+    public String report() {
+        Map<String, List<Phase>> chains = phases.stream()
+            .sorted(Comparator.comparingLong(Phase::start))
+            .collect(Collectors.groupingBy(Phase::chain, LinkedHashMap::new, Collectors.toList()));
+        if (chains.isEmpty()) {
+            return "nothing started";
+        }
+        List<String> chainNames = new ArrayList<>(chains.keySet());
+        chainNames.sort(Comparator.comparingLong((String chain) -> end(chains.get(chain))).reversed());
+
+        long wall = end(chains.get(chainNames.get(0)));
+        long sequential = phases.stream().mapToLong(Phase::duration).sum();
+        StringBuilder report = new StringBuilder("critical path: ").append(describe(chainNames.get(0), chains.get(chainNames.get(0))));
+        if (chainNames.size() > 1) {
+            report.append("; also: ").append(chainNames.subList(1, chainNames.size()).stream()
+                .map(chain -> describe(chain, chains.get(chain)))
+                .collect(Collectors.joining(", ")));
+        }
+        return report.append("; wall %d ms, sequential would've been %d ms".formatted(millis(wall), millis(sequential))).toString();
+    }
+
+    private static String describe(String chain, List<Phase> chainPhases) {
+        return chain + chainPhases.stream()
+            .map(phase -> phase.name() + " " + millis(phase.duration()) + " ms")
+            .collect(Collectors.joining(", ", " [", "] ")) + millis(end(chainPhases)) + " ms";
+    }
+
+    private static long end(List<Phase> chainPhases) {
+        return chainPhases.stream().mapToLong(Phase::end).max().orElse(0);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private record Phase(String chain, String name, long start, long end) {
+        long duration() {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.platform.launcher.LauncherSession;
+import org.junit.platform.launcher.LauncherSessionListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports how long the fork took to start, and what the suite saved once the launcher session is over.
+ * Then it stops the shared containers right away, rather than waiting for the JVM to exit.
+ */
+public class SuiteSessionListener implements LauncherSessionListener {
+
+    private static final Logger logger = Logger.getLogger(SuiteSessionListener.class.getName());
+
+    /**
+     * How long the fork took to get here, i.e. the JVM startup and class loading before the first test can be discovered,
+     * so the price of every extra fork is visible, and whether it had an AppCDS archive to map (see the {@code cds} profile).
+     */
+    @Override
+    public void launcherSessionOpened(LauncherSession session) {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        logger.log(Level.INFO, "Fork {0} started in {1} ms, {2} classes loaded, {3}", new Object[]{
+            runtime.getPid(), runtime.getUptime(), ManagementFactory.getClassLoadingMXBean().getLoadedClassCount(), sharing(runtime)});
+    }
+
+    private static String sharing(RuntimeMXBean runtime) {
+        String option = "-XX:SharedArchiveFile=";
+        return runtime.getInputArguments().stream()
+            .filter(argument -> argument.startsWith(option))
+            .map(argument -> Path.of(argument.substring(option.length())))
+            .map(archive -> Files.exists(archive) ? "AppCDS archive " + archive : "no AppCDS archive yet, writing " + archive + " at exit")
+            .findFirst()
+            .orElse("no AppCDS archive");
+    }
+
+    @Override
+    public void launcherSessionClosed(LauncherSession session) {
+        logger.log(Level.INFO, ContainerRequirements.report());
+        logger.log(Level.INFO, AdaptiveWaitStrategy.report());
+        logger.log(Level.INFO, ContainerClients.report());
+        logger.log(Level.INFO, VirtualClock.report());
+        ContainerRegistry.shutdown();
+    }
+}
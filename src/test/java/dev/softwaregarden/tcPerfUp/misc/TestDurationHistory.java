@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * How long each test class took in the previous runs, kept in {@value #FILE_PROPERTY}
+ * ({@code .test-durations.properties} in the working directory by default) as a moving average in milliseconds.
+ * Classes without history yet are estimated to take as long as an average known one.
+ */
+public final class TestDurationHistory {
+
+    public static final String FILE_PROPERTY = "tcPerfUp.history.file";
+
+    private static final Path FILE = Path.of(System.getProperty(FILE_PROPERTY, ".test-durations.properties"));
+
+    // when there's no history at all, all the classes are estimated the same
+    private static final long NO_HISTORY_MILLIS = 1000;
+
+    private final Map<String, Long> millis;
+    private final long unknownMillis;
+
+    private TestDurationHistory(Map<String, Long> millis) {
+        this.millis = millis;
+        this.unknownMillis = (long) millis.values().stream().mapToLong(Long::longValue).average().orElse(NO_HISTORY_MILLIS);
+    }
+
+    public static TestDurationHistory load() {
+        return new TestDurationHistory(read());
+    }
+
+    public Set<String> classNames() {
+        return millis.keySet();
+    }
+
+    public long estimate(String className) {
+        return millis.getOrDefault(className, unknownMillis);
+    }
+
+    /**
+     * Merges the durations just measured into the file, halfway between the history and the new measurement,
+     * so that one slow run (e.g. pulling an image) doesn't skew the estimates for good.
+     */
+    public static synchronized void record(Map<String, Long> measured) {
+        PropertiesFile.update(FILE, "test class -> duration in ms, see " + TestDurationHistory.class.getName(), properties ->
+            measured.forEach((className, duration) -> {
+                String previous = properties.getProperty(className);
+                long merged = previous == null ? duration : (Long.parseLong(previous) + duration) / 2;
+                properties.setProperty(className, Long.toString(merged));
+            }));
+    }
+
+    private static Map<String, Long> read() {
+        Map<String, Long> millis = new TreeMap<>();
+        Properties properties = PropertiesFile.read(FILE);
+        properties.stringPropertyNames().forEach(className -> millis.put(className, Long.parseLong(properties.getProperty(className))));
+        return millis;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures how long each test class takes, from its first {@code @BeforeAll} to its last {@code @AfterAll},
+ * and records it in the {@link TestDurationHistory} once the plan is done. Classes which didn't really run aren't recorded,
+ * as their durations would drag the estimates down: the skipped ones (e.g. by {@link TestImpactExtension}),
+ * the aborted ones and those none of whose tests got past their assumptions.
+ */
+public class TestDurationRecorder implements TestExecutionListener {
+
+    private static final Logger logger = Logger.getLogger(TestDurationRecorder.class.getName());
+
+    private final Map<String, Long> started = new ConcurrentHashMap<>();
+    private final Map<String, Long> measured = new ConcurrentHashMap<>();
+    private final Set<String> ranTests = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        className(testIdentifier).ifPresent(className -> started.put(className, System.nanoTime()));
+    }
+
+    @Override
+    public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+        className(testIdentifier).ifPresent(started::remove);
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        boolean aborted = testExecutionResult.getStatus() == TestExecutionResult.Status.ABORTED;
+        if (testIdentifier.isTest() && !aborted) {
+            testClassName(testIdentifier).ifPresent(ranTests::add);
+        }
+        className(testIdentifier).ifPresent(className -> {
+            Long start = started.remove(className);
+            if (start != null && !aborted && ranTests.contains(className)) {
+                measured.put(className, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        });
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (!measured.isEmpty()) {
+            TestDurationHistory.record(measured);
+            logger.log(Level.INFO, "Recorded the durations of {0} test class(es)", measured.size());
+        }
+    }
+
+    private static Optional<String> className(TestIdentifier testIdentifier) {
+        return testIdentifier.getSource()
+            .filter(ClassSource.class::isInstance)
+            .map(source -> ((ClassSource) source).getClassName());
+    }
+
+    private static Optional<String> testClassName(TestIdentifier testIdentifier) {
+        return testIdentifier.getSource()
+            .filter(MethodSource.class::isInstance)
+            .map(source -> ((MethodSource) source).getClassName());
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Tells whether anything a test class depends on changed since it last passed, to skip it if not,
+ * which only happens with {@code -DtcPerfUp.impact=true}; the classes which pass are recorded either way.
+ * Its fingerprint covers the bytecode of the class and of every project class it references, transitively
+ * (found in the constant pools), the resource directories named by string constants in any of them
+ * (e.g. the changelogs, {@code mapping.json} and {@code employees.njson}), the jars on the classpath (their names, sizes and dates),
+ * the {@code tcPerfUp.*} switches of the run and what configures it: {@code junit-platform.properties}, {@code logback-test.xml}
+ * and the services in {@code META-INF/services}, along with the classes of the extensions and listeners registered there.
+ * The fingerprints of the classes which passed, and how the last run of every class went, are kept in {@value #FILE_PROPERTY}
+ * ({@code .test-impact.properties} in the working directory by default), separately for each {@link BackendTier}.
+ */
+public final class TestImpact {
+
+    public static final String ENABLED_PROPERTY = "tcPerfUp.impact";
+    public static final String FILE_PROPERTY = "tcPerfUp.impact.file";
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final Path FILE = Path.of(System.getProperty(FILE_PROPERTY, ".test-impact.properties"));
+    private static final String COMMENT = "test class -> fingerprint of what it depends on when it last passed, and how its last run went, see "
+        + TestImpact.class.getName();
+    private static final String LAST_SUFFIX = ".last";
+
+    // what sets the run up for every class: the JUnit configuration, the logging and the extensions and listeners registered
+    private static final List<String> RUN_RESOURCES = List.of("junit-platform.properties", "logback-test.xml", "META-INF/services");
+
+    private static final Pattern TYPE_IN_DESCRIPTOR = Pattern.compile("L([\\w/$]+);");
+    private static final Pattern RESOURCE_PATH = Pattern.compile("([\\w.-]+/)*[\\w-][\\w.-]*/?");
+
+    private static final BackendTier TIER = BackendTier.fromSystemProperty();
+
+    private static final Map<Class<?>, String> fingerprints = new ConcurrentHashMap<>();
+    private static String libraries;
+
+    private TestImpact() {
+    }
+
+    /**
+     * True if skipping is on and the class passed with the very same fingerprint before.
+     */
+    public static boolean unchanged(Class<?> testClass) {
+        return ENABLED && fingerprint(testClass).equals(read().getProperty(key(testClass)));
+    }
+
+    /**
+     * Records the fingerprint the class passed with, along with its outcome, e.g. {@code 3 passed}.
+     */
+    public static synchronized void passed(Class<?> testClass, String outcome) {
+        String fingerprint = fingerprint(testClass);
+        String last = lastOutcome(outcome);
+        PropertiesFile.update(FILE, COMMENT, passed -> {
+            passed.setProperty(key(testClass), fingerprint);
+            passed.setProperty(key(testClass) + LAST_SUFFIX, last);
+        });
+    }
+
+    /**
+     * Forgets the fingerprint, so that the class runs next time, and records its outcome, e.g. {@code 1 failed, 2 passed}.
+     */
+    public static synchronized void failed(Class<?> testClass, String outcome) {
+        String last = lastOutcome(outcome);
+        PropertiesFile.update(FILE, COMMENT, passed -> {
+            passed.remove(key(testClass));
+            passed.setProperty(key(testClass) + LAST_SUFFIX, last);
+        });
+    }
+
+    /**
+     * How the last run of the class went and when, if it's been recorded.
+     */
+    public static Optional<String> lastOutcome(Class<?> testClass) {
+        return Optional.ofNullable(read().getProperty(key(testClass) + LAST_SUFFIX));
+    }
+
+    private static String lastOutcome(String outcome) {
+        return outcome + " at " + Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    // a class passing against the stand-ins says nothing about how it does against the containers
+    private static String key(Class<?> testClass) {
+        return TIER == BackendTier.CONTAINERS ? testClass.getName() : testClass.getName() + "@" + TIER.name().toLowerCase(Locale.ROOT);
+    }
+
+    public static String fingerprint(Class<?> testClass) {
+        return fingerprints.computeIfAbsent(testClass, TestImpact::computeFingerprint);
+    }
+
+    private static String computeFingerprint(Class<?> testClass) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ClassLoader loader = testClass.getClassLoader();
+            Path projectDirectory = projectDirectory(testClass);
+            Map<String, Path> resources = new TreeMap<>();
+            Set<String> visited = new TreeSet<>();
+            Map<String, URL> projectClasses = new TreeMap<>();
+            Deque<String> toVisit = new ArrayDeque<>(List.of(testClass.getName().replace('.', '/')));
+            for (String runResource : RUN_RESOURCES) {
+                for (URL url : Collections.list(loader.getResources(runResource))) {
+                    if (inProject(url, projectDirectory)) {
+                        Path path = pathOf(url);
+                        resources.put(path.toUri().toString(), path);
+                        toVisit.addAll(registeredServices(path));
+                    }
+                }
+            }
+            while (!toVisit.isEmpty()) {
+                String className = toVisit.poll();
+                URL url = loader.getResource(className + ".class");
+                // only the project's own classes, the libraries are covered by the jars
+                if (!visited.add(className) || url == null || !inProject(url, projectDirectory)) {
+                    continue;
+                }
+                projectClasses.put(className, url);
+                byte[] bytecode;
+                try (InputStream in = url.openStream()) {
+                    bytecode = in.readAllBytes();
+                }
+                ConstantPool pool = ConstantPool.parse(bytecode);
+                toVisit.addAll(pool.classNames());
+                for (String constant : pool.strings()) {
+                    resource(loader, constant, projectDirectory).ifPresent(resource -> resources.put(resource.toUri().toString(), resource));
+                }
+            }
+            for (Map.Entry<String, URL> projectClass : projectClasses.entrySet()) {
+                digest.update(projectClass.getKey().getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = projectClass.getValue().openStream()) {
+                    digest.update(in.readAllBytes());
+                }
+            }
+            for (Path resource : resources.values()) {
+                hashResource(digest, resource);
+            }
+            digest.update(libraries(projectDirectory).getBytes(StandardCharsets.UTF_8));
+            settings().forEach((name, value) -> digest.update((name + '=' + value + '\n').getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException | URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The jars on the classpath, by name, size and modification time, so that a jar replaced under the same name,
+     * like a snapshot, counts as a change; the project's own jars only by name, as their classes are hashed one by one.
+     * The same for every class of the run, so it's worked out once.
+     */
+    private static synchronized String libraries(Path projectDirectory) throws IOException {
+        if (libraries == null) {
+            StringBuilder jars = new StringBuilder();
+            List<Path> classpath = Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+                .filter(entry -> entry.endsWith(".jar"))
+                .sorted()
+                .map(entry -> Path.of(entry).toAbsolutePath())
+                .toList();
+            for (Path jar : classpath) {
+                jars.append(jar.getFileName());
+                if (!jar.startsWith(projectDirectory) && Files.exists(jar)) {
+                    jars.append(' ').append(Files.size(jar)).append(' ').append(Files.getLastModifiedTime(jar).toMillis());
+                }
+                jars.append('\n');
+            }
+            libraries = jars.toString();
+        }
+        return libraries;
+    }
+
+    /**
+     * The switches of the run, but the ones of this class, which only decide whether to skip.
+     */
+    private static Map<String, String> settings() {
+        Map<String, String> settings = new TreeMap<>();
+        System.getProperties().stringPropertyNames().stream()
+            .filter(name -> name.startsWith("tcPerfUp.") && !name.startsWith(ENABLED_PROPERTY))
+            .forEach(name -> settings.put(name, System.getProperty(name)));
+        return settings;
+    }
+
+    /**
+     * The classes listed in a {@code META-INF/services} directory, e.g. the extensions JUnit loads for every class.
+     */
+    private static List<String> registeredServices(Path path) throws IOException {
+        if (!path.endsWith("services") || !Files.isDirectory(path)) {
+            return List.of();
+        }
+        List<String> classNames = new ArrayList<>();
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.readAllLines(file).stream()
+                    .map(line -> line.replaceFirst("#.*", "").strip())
+                    .filter(line -> !line.isEmpty())
+                    .forEach(line -> classNames.add(line.replace('.', '/')));
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * The resource the constant names, if it names one at all. A file in a directory, like {@code config/liquibase/db.changelog-root.xml},
+     * stands for the whole directory, since it may include its neighbours.
+     */
+    private static Optional<Path> resource(ClassLoader loader, String constant, Path projectDirectory) throws IOException, URISyntaxException {
+        String path = constant.startsWith("/") ? constant.substring(1) : constant;
+        if (path.isEmpty() || path.endsWith(".class") || !RESOURCE_PATH.matcher(path).matches()) {
+            return Optional.empty();
+        }
+        URL url = loader.getResource(path);
+        if (url == null || !inProject(url, projectDirectory)) {
+            return Optional.empty();
+        }
+        Path resource = pathOf(url);
+        return Optional.of(Files.isRegularFile(resource) && path.contains("/") ? resource.getParent() : resource);
+    }
+
+    // where target/classes and target/test-classes are, or their jars (see the cds profile)
+    private static Path projectDirectory(Class<?> testClass) throws URISyntaxException {
+        return Path.of(testClass.getProtectionDomain().getCodeSource().getLocation().toURI()).toAbsolutePath().getParent();
+    }
+
+    private static boolean inProject(URL url, Path projectDirectory) throws IOException, URISyntaxException {
+        URL entry = "jar".equals(url.getProtocol()) ? ((JarURLConnection) url.openConnection()).getJarFileURL() : url;
+        return "file".equals(entry.getProtocol()) && Path.of(entry.toURI()).toAbsolutePath().startsWith(projectDirectory);
+    }
+
+    private static synchronized Path pathOf(URL url) throws IOException, URISyntaxException {
+        URI uri = url.toURI();
+        try {
+            return Path.of(uri);
+        } catch (FileSystemNotFoundException e) {
+            // inside a jar
+            return FileSystems.newFileSystem(uri, Map.of()).provider().getPath(uri);
+        }
+    }
+
+    private static void hashResource(MessageDigest digest, Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isRegularFile).filter(path -> !path.toString().endsWith(".class")).sorted().toList()) {
+                digest.update(root.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(path));
+            }
+        }
+    }
+
+    private static Properties read() {
+        return PropertiesFile.read(FILE);
+    }
+
+    /**
+     * Just enough of the class file format to list the classes and the string constants a class refers to.
+     */
+    private record ConstantPool(List<String> classNames, List<String> strings) {
+
+        static ConstantPool parse(byte[] bytecode) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode));
+            in.skipBytes(8); // magic, minor and major version
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            List<Integer> classIndexes = new ArrayList<>();
+            List<Integer> stringIndexes = new ArrayList<>();
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> utf8[i] = in.readUTF();
+                    case 7 -> classIndexes.add(in.readUnsignedShort());
+                    case 8 -> stringIndexes.add(in.readUnsignedShort());
+                    case 16, 19, 20 -> in.skipBytes(2);
+                    case 15 -> in.skipBytes(3);
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                    case 5, 6 -> {
+                        in.skipBytes(8);
+                        i++; // takes two entries
+                    }
+                    default -> throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+            Set<String> classNames = new TreeSet<>();
+            classIndexes.forEach(index -> classNames.add(utf8[index]));
+            // types which only appear in signatures, e.g. of fields and parameters
+            for (String entry : utf8) {
+                if (entry != null) {
+                    Matcher matcher = TYPE_IN_DESCRIPTOR.matcher(entry);
+                    while (matcher.find()) {
+                        classNames.add(matcher.group(1));
+                    }
+                }
+            }
+            classNames.removeIf(name -> name.startsWith("["));
+            return new ConstantPool(new ArrayList<>(classNames), stringIndexes.stream().map(index -> utf8[index]).toList());
+        }
+    }
+}
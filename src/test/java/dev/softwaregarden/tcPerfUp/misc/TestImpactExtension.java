@@ -0,0 +1,100 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestWatcher;
+import org.junit.platform.commons.support.AnnotationSupport;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Skips a test class if skipping is on and nothing it depends on changed since it last passed (see {@link TestImpact}),
+ * telling how its last run went in the reason, and records how this run went once it's done: passed if all of its tests did.
+ */
+public class TestImpactExtension implements ExecutionCondition, TestWatcher, AfterAllCallback {
+
+    private static final Logger logger = Logger.getLogger(TestImpactExtension.class.getName());
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(TestImpactExtension.class);
+
+    public static boolean appliesTo(Class<?> testClass) {
+        return AnnotationSupport.findRepeatableAnnotations(testClass, ExtendWith.class).stream()
+            .flatMap(extendWith -> Arrays.stream(extendWith.value()))
+            .anyMatch(TestImpactExtension.class::equals);
+    }
+
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        if (context.getTestMethod().isPresent() || context.getTestClass().isEmpty()) {
+            return ConditionEvaluationResult.enabled("decided for the whole class");
+        }
+        Class<?> testClass = context.getRequiredTestClass();
+        if (TestImpact.unchanged(testClass)) {
+            String last = TestImpact.lastOutcome(testClass).orElse("passed");
+            logger.log(Level.INFO, "Skipping {0}, last run {1} and nothing it depends on has changed since",
+                new Object[]{testClass.getSimpleName(), last});
+            return ConditionEvaluationResult.disabled(
+                "last run " + last + " and nothing it depends on has changed since, run without -DtcPerfUp.impact=true to run it anyway");
+        }
+        return ConditionEvaluationResult.enabled("changed since it last passed, or never passed");
+    }
+
+    @Override
+    public void testSuccessful(ExtensionContext context) {
+        outcome(context, "passed").incrementAndGet();
+    }
+
+    @Override
+    public void testFailed(ExtensionContext context, Throwable cause) {
+        outcome(context, "failed").incrementAndGet();
+    }
+
+    @Override
+    public void testAborted(ExtensionContext context, Throwable cause) {
+        outcome(context, "aborted").incrementAndGet();
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        int passed = outcome(context, "passed").get();
+        int failed = outcome(context, "failed").get();
+        int aborted = outcome(context, "aborted").get();
+        String outcome = Stream.of(passed + " passed", failed + " failed", aborted + " aborted")
+            .filter(count -> !count.startsWith("0 "))
+            .collect(Collectors.joining(", "));
+        if (failed > 0 || aborted > 0) {
+            TestImpact.failed(context.getRequiredTestClass(), outcome);
+        } else if (passed > 0) {
+            TestImpact.passed(context.getRequiredTestClass(), outcome);
+        }
+    }
+
+    private static AtomicInteger outcome(ExtensionContext context, String outcome) {
+        ExtensionContext classContext = context.getTestMethod().isPresent() ? context.getParent().orElseThrow() : context;
+        return classContext.getStore(NAMESPACE).getOrComputeIfAbsent(outcome, key -> new AtomicInteger(), AtomicInteger.class);
+    }
+}
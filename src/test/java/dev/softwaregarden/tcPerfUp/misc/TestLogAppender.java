@@ -0,0 +1,42 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Appends the events logged by a test's thread to its {@link TestLogBuffer}, see {@code logback-test.xml}.
+ * It has to be called on the thread which logged, so it can't sit behind the async appender.
+ */
+public class TestLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    private Layout<ILoggingEvent> layout;
+
+    public void setLayout(Layout<ILoggingEvent> layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        TestLogBuffer buffer = TestLogBuffer.current();
+        if (buffer != null) {
+            buffer.append(layout.doLayout(event).stripTrailing());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.output.OutputFrame;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last lines logged or printed for a test, and the output of the containers it uses, kept in memory only,
+ * as a ring of at most {@code tcPerfUp.logs.buffer} lines. {@link TestLogCapture} writes it out if the test fails
+ * and drops it otherwise.
+ * Lines land in the buffer of the test running on the thread, see {@link #runWith}, or the one the container
+ * is {@link #attach attached} to.
+ */
+public final class TestLogBuffer {
+
+    public static final int CAPACITY = Integer.getInteger("tcPerfUp.logs.buffer", 2_000);
+
+    private static final ThreadLocal<TestLogBuffer> current = new ThreadLocal<>();
+    private static final Map<String, TestLogBuffer> attached = new ConcurrentHashMap<>();
+    private static final Set<String> followed = ConcurrentHashMap.newKeySet();
+
+    private final String test;
+    private final ArrayDeque<String> lines = new ArrayDeque<>();
+    private long dropped;
+
+    TestLogBuffer(String test) {
+        this.test = test;
+    }
+
+    /**
+     * The buffer of the test running on this thread, if any.
+     */
+    public static TestLogBuffer current() {
+        return current.get();
+    }
+
+    static void setCurrent(TestLogBuffer buffer) {
+        if (buffer == null) {
+            current.remove();
+        } else {
+            current.set(buffer);
+        }
+    }
+
+    /**
+     * Runs the action with the buffer as the current one, so that e.g. preparing containers in the background
+     * still logs into the buffer of the test it's done for.
+     */
+    public static void runWith(TestLogBuffer buffer, Runnable action) {
+        TestLogBuffer previous = current.get();
+        setCurrent(buffer);
+        try {
+            action.run();
+        } finally {
+            setCurrent(previous);
+        }
+    }
+
+    /**
+     * Sends the output of the container into the buffer, until {@link #detach detached}. The container is followed
+     * from its start on the first call, what it prints while no test is attached is dropped.
+     */
+    public static void attach(GenericContainer<?> container, TestLogBuffer buffer) {
+        if (container == null || buffer == null) {
+            return;
+        }
+        String containerId = container.getContainerId();
+        attached.put(containerId, buffer);
+        if (followed.add(containerId)) {
+            String name = container.getDockerImageName().replaceAll(".*/|:.*", "");
+            container.followOutput(frame -> {
+                TestLogBuffer target = attached.get(containerId);
+                if (target != null && frame.getType() != OutputFrame.OutputType.END) {
+                    target.append("[" + name + "] " + frame.getUtf8StringWithoutLineEnding());
+                }
+            });
+            ContainerRegistry.closeOnStop(container, () -> {
+                attached.remove(containerId);
+                followed.remove(containerId);
+            });
+        }
+    }
+
+    public static void detach(GenericContainer<?> container, TestLogBuffer buffer) {
+        if (container != null && buffer != null) {
+            attached.remove(container.getContainerId(), buffer);
+        }
+    }
+
+    public synchronized void append(String line) {
+        if (lines.size() == CAPACITY) {
+            lines.removeFirst();
+            dropped++;
+        }
+        lines.addLast(line);
+    }
+
+    synchronized void writeTo(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            StringBuilder content = new StringBuilder();
+            content.append("# ").append(test);
+            if (dropped > 0) {
+                content.append(", the first ").append(dropped).append(" line(s) were dropped");
+            }
+            content.append('\n');
+            lines.forEach(line -> content.append(line).append('\n'));
+            Files.writeString(file, content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void clear() {
+        lines.clear();
+        dropped = 0;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.TestWatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Gives every test a {@link TestLogBuffer}, and writes it to {@code tcPerfUp.logs.dir}/&lt;class&gt;/&lt;method&gt;.log
+ * only if the test fails. Registered for all the tests through auto-detection, see {@code junit-platform.properties}.
+ * Besides the container output, the buffer gets what the test thread logs (logback through {@link TestLogAppender},
+ * JUL through a handler on the root logger) and prints to {@code System.out}, which stays off the console
+ * while a test is running. The handler and the {@code System.out} splitting lines between the tests and the console
+ * are only there while a test is: installed before the first one starts and removed once the last one running is done.
+ */
+public class TestLogCapture implements BeforeEachCallback, TestWatcher {
+
+    private static final Logger logger = Logger.getLogger(TestLogCapture.class.getName());
+
+    public static final Path DIR = Path.of(System.getProperty("tcPerfUp.logs.dir", "target/test-logs"));
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(TestLogCapture.class);
+    private static final Formatter FORMATTER = new SimpleFormatter();
+
+    private static final Handler JUL_HANDLER = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            TestLogBuffer buffer = TestLogBuffer.current();
+            if (buffer != null && isLoggable(record)) {
+                buffer.append("%1$tT.%1$tL %2$-5s %3$s - %4$s".formatted(record.getMillis(), record.getLevel(),
+                    record.getLoggerName(), FORMATTER.formatMessage(record)));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    // the tests running, the System.out of before the first one is put back once none is
+    private static int running;
+    private static PrintStream console;
+
+    private static synchronized void install() {
+        if (running++ == 0) {
+            console = System.out;
+            System.setOut(new PrintStream(new TestLines(console), true, StandardCharsets.UTF_8));
+            Logger.getLogger("").addHandler(JUL_HANDLER);
+        }
+    }
+
+    private static synchronized void uninstall() {
+        if (--running == 0) {
+            Logger.getLogger("").removeHandler(JUL_HANDLER);
+            System.out.flush();
+            System.setOut(console);
+            console = null;
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        TestLogBuffer buffer = new TestLogBuffer(context.getRequiredTestClass().getName() + "." + context.getDisplayName());
+        context.getStore(NAMESPACE).put(TestLogBuffer.class, buffer);
+        TestLogBuffer.setCurrent(buffer);
+        install();
+    }
+
+    @Override
+    public void testFailed(ExtensionContext context, Throwable cause) {
+        buffer(context).ifPresent(buffer -> {
+            Path file = DIR.resolve(context.getRequiredTestClass().getName()).resolve(fileName(context));
+            buffer.writeTo(file);
+            TestLogBuffer.setCurrent(null);
+            uninstall();
+            logger.log(Level.INFO, "{0} failed, its logs are in {1}", new Object[]{context.getDisplayName(), file});
+        });
+    }
+
+    @Override
+    public void testSuccessful(ExtensionContext context) {
+        discard(context);
+    }
+
+    @Override
+    public void testAborted(ExtensionContext context, Throwable cause) {
+        discard(context);
+    }
+
+    private static void discard(ExtensionContext context) {
+        buffer(context).ifPresent(buffer -> {
+            buffer.clear();
+            TestLogBuffer.setCurrent(null);
+            uninstall();
+        });
+    }
+
+    private static Optional<TestLogBuffer> buffer(ExtensionContext context) {
+        return Optional.ofNullable(context.getStore(NAMESPACE).get(TestLogBuffer.class, TestLogBuffer.class));
+    }
+
+    private static String fileName(ExtensionContext context) {
+        String method = context.getRequiredTestMethod().getName();
+        String displayName = context.getDisplayName();
+        return (displayName.startsWith(method + "(") ? method : method + "-" + displayName.replaceAll("[^A-Za-z0-9._-]+", "_")) + ".log";
+    }
+
+    /**
+     * Splits what's printed into lines, which go to the buffer of the test printing them, or to the console
+     * if there's no test running on the thread.
+     */
+    private static final class TestLines extends OutputStream {
+
+        private final PrintStream console;
+        private final ThreadLocal<ByteArrayOutputStream> line = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+        TestLines(PrintStream console) {
+            this.console = console;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            TestLogBuffer buffer = TestLogBuffer.current();
+            if (buffer == null) {
+                console.write(bytes, offset, length);
+                return;
+            }
+            ByteArrayOutputStream pending = line.get();
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    buffer.append(pending.toString(StandardCharsets.UTF_8).stripTrailing());
+                    pending.reset();
+                } else {
+                    pending.write(bytes[i]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            console.flush();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import org.junit.platform.engine.FilterResult;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs only one shard of the test classes, selected with {@value #SHARD_PROPERTY}, e.g. {@code -DtcPerfUp.shard=2/3}.
+ * The classes with {@link TestDurationHistory} are split longest first onto the least loaded shard, so that all the shards
+ * (e.g. parallel CI jobs) are done at about the same time; the ones without history are spread by the hash of their name.
+ * Either way the split doesn't depend on which classes are being discovered (Surefire discovers them one by one first),
+ * so every shard computes the same one, as long as they all see the same history.
+ */
+public class TestShardFilter implements PostDiscoveryFilter {
+
+    public static final String SHARD_PROPERTY = "tcPerfUp.shard";
+
+    private static final Logger logger = Logger.getLogger(TestShardFilter.class.getName());
+
+    private final int shard;
+    private final int shards;
+    private final Map<String, Integer> assignment = new HashMap<>();
+
+    public TestShardFilter() {
+        String[] selected = System.getProperty(SHARD_PROPERTY, "1/1").split("/");
+        shard = Integer.parseInt(selected[0].trim());
+        shards = Integer.parseInt(selected[1].trim());
+        if (shard < 1 || shard > shards) {
+            throw new IllegalArgumentException(SHARD_PROPERTY + " should be <shard>/<shards>, 1 <= shard <= shards, not " + shard + "/" + shards);
+        }
+        if (shards > 1) {
+            assign(TestDurationHistory.load());
+        }
+    }
+
+    /**
+     * Filters are applied to the leaves only, i.e. the test methods, so it's their top level class which decides.
+     */
+    @Override
+    public FilterResult apply(TestDescriptor descriptor) {
+        if (shards == 1) {
+            return FilterResult.included("not sharded");
+        }
+        Optional<String> className = topLevelClassName(descriptor);
+        if (className.isEmpty()) {
+            return FilterResult.included("not in a test class");
+        }
+        int assigned = shardOf(className.get());
+        return FilterResult.includedIf(assigned == shard,
+            () -> "in shard " + shard + "/" + shards,
+            () -> "in shard " + assigned + "/" + shards);
+    }
+
+    private int shardOf(String className) {
+        Integer assigned = assignment.get(className);
+        return assigned != null ? assigned : Math.floorMod(className.hashCode(), shards) + 1;
+    }
+
+    private void assign(TestDurationHistory history) {
+        List<String> classNames = history.classNames().stream()
+            .sorted(Comparator.comparingLong(history::estimate).reversed().thenComparing(Comparator.naturalOrder()))
+            .toList();
+        long[] load = new long[shards];
+        for (String className : classNames) {
+            int lightest = 0;
+            for (int i = 1; i < shards; i++) {
+                if (load[i] < load[lightest]) {
+                    lightest = i;
+                }
+            }
+            assignment.put(className, lightest + 1);
+            load[lightest] += history.estimate(className);
+        }
+        logger.log(Level.INFO, "Running shard {0}/{1}: estimated {2} ms, all the shards {3} ms, not counting the classes without history",
+            new Object[]{shard, shards, load[shard - 1], Arrays.toString(load)});
+    }
+
+    private static Optional<String> topLevelClassName(TestDescriptor descriptor) {
+        String className = null;
+        for (TestDescriptor current = descriptor; !current.isRoot(); current = current.getParent().orElseThrow()) {
+            if (current.getSource().orElse(null) instanceof ClassSource classSource) {
+                className = classSource.getClassName();
+            }
+        }
+        return Optional.ofNullable(className);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  Copyright (C) 2024 Piotr Przybył
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.softwaregarden.tcPerfUp.misc;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The time the tests (and the code they test) should consult instead of the system's.
+ * <p>
+ * In virtual mode (the default) sleeping doesn't wait, the clock jumps instead, like a scheduler's:
+ * {@code sleep(d)} wakes up at {@code now + d}, and the pending sleeper which wakes up first moves the clock to its wake-up time
+ * and returns at once, the later ones following in turn. So sleeps running side by side overlap like real ones,
+ * two threads sleeping 100 ms each move the clock by 100 ms, not 200 ms. The clock never goes back, so the order
+ * of what's observed, and deadlines computed from {@link #nanoTime()}, hold just like with real sleeping.
+ * For tests of the clock itself, {@link #pause()} stops the sleepers from moving it, and {@link #advance(Duration)}
+ * moves it by hand, waking up the sleepers whose time has come.
+ * {@code -DtcPerfUp.clock=real} makes it a plain system clock which really sleeps.
+ */
+public final class VirtualClock extends Clock {
+
+    public static final boolean VIRTUAL = !"real".equalsIgnoreCase(System.getProperty("tcPerfUp.clock", "virtual"));
+
+    private static final long originNanos = System.nanoTime();
+    private static final Instant originInstant = Instant.now();
+    private static final LongAdder skippedNanos = new LongAdder();
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition moved = lock.newCondition();
+    private static final PriorityQueue<Sleeper> sleepers = new PriorityQueue<>(
+        Comparator.comparingLong(Sleeper::wakeAt).thenComparingLong(Sleeper::sequence));
+    private static volatile long virtualNanos;
+    private static long sequence;
+    private static boolean paused;
+
+    private static final VirtualClock instance = new VirtualClock(ZoneId.systemDefault());
+
+    private final ZoneId zone;
+
+    private record Sleeper(long wakeAt, long sequence) {
+    }
+
+    private VirtualClock(ZoneId zone) {
+        this.zone = Objects.requireNonNull(zone);
+    }
+
+    public static VirtualClock get() {
+        return instance;
+    }
+
+    /**
+     * Like {@link System#nanoTime()}: only good for measuring elapsed time.
+     */
+    public long nanoTime() {
+        return VIRTUAL ? System.nanoTime() + virtualNanos : System.nanoTime();
+    }
+
+    public void sleep(Duration duration) throws InterruptedException {
+        if (!VIRTUAL) {
+            Thread.sleep(duration);
+            return;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long nanos = duration.toNanos();
+        if (nanos <= 0) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            Sleeper sleeper = new Sleeper(nanoTime() + nanos, sequence++);
+            sleepers.add(sleeper);
+            try {
+                long left;
+                while ((left = sleeper.wakeAt() - nanoTime()) > 0) {
+                    if (!paused && sleepers.peek() == sleeper) {
+                        virtualNanos += left;
+                        skippedNanos.add(left);
+                        break;
+                    }
+                    // the real time passes too, so the sleeper also wakes up when it's reached that way
+                    moved.awaitNanos(left);
+                }
+            } finally {
+                sleepers.remove(sleeper);
+                moved.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a virtual clock forward without anybody sleeping, e.g. to make a timeout expire;
+     * the sleepers whose wake-up time it passes return.
+     */
+    public void advance(Duration duration) {
+        if (!VIRTUAL) {
+            throw new IllegalStateException("Only a virtual clock can be advanced");
+        }
+        lock.lock();
+        try {
+            virtualNanos += Math.max(0, duration.toNanos());
+            moved.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the sleepers from moving the clock until {@link #resume()}, so that only {@link #advance(Duration)}
+     * (or the real time passing) wakes them up.
+     */
+    public void pause() {
+        if (!VIRTUAL) {
+            throw new IllegalStateException("Only a virtual clock can be paused");
+        }
+        lock.lock();
+        try {
+            paused = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+            moved.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How many threads are sleeping on the clock right now.
+     */
+    public int sleeping() {
+        lock.lock();
+        try {
+            return sleepers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How much sleeping the virtual clock has spared so far.
+     */
+    public static Duration skipped() {
+        return Duration.ofNanos(skippedNanos.sum());
+    }
+
+    public static String report() {
+        return VIRTUAL
+            ? "Virtual clock: %d ms of sleeping skipped".formatted(TimeUnit.NANOSECONDS.toMillis(skippedNanos.sum()))
+            : "Virtual clock: off, tests slept in real time";
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new VirtualClock(zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return VIRTUAL ? originInstant.plusNanos(nanoTime() - originNanos) : Instant.now();
+    }
+}